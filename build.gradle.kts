@@ -95,6 +95,17 @@ tasks {
         javaLauncher.set(project.javaToolchains.launcherFor { languageVersion.set(java.toolchain.languageVersion) })
     }
 
+    val packRom by registering(Exec::class) {
+        group = "build"
+        description = "Packs the ROM into a single binary image"
+
+        inputs.files(compileTeaVM).withPropertyName("teaVM")
+        inputs.file("tools/pack-rom.js").withPropertyName("script")
+        outputs.dir(layout.buildDirectory.dir("rom")).withPropertyName("output")
+
+        commandLine("node", "tools/pack-rom.js")
+    }
+
     val genCssTypes by registering(Exec::class) {
         group = "build"
         description = "Generates type stubs for CSS files"
@@ -111,12 +122,14 @@ tasks {
 
         dependsOn(genCssTypes)
         inputs.files(compileTeaVM).withPropertyName("teaVM")
+        inputs.files(packRom).withPropertyName("rom")
         inputs.files(fileTree("src/web")).withPropertyName("sources")
         inputs.file("package-lock.json").withPropertyName("package-lock.json")
         inputs.file("rollup.config.js").withPropertyName("Rollup config")
 
         outputs.files(fileTree(layout.buildDirectory.dir("web"))).withPropertyName("output")
         outputs.files(fileTree(layout.buildDirectory.dir("webMin"))).withPropertyName("outputMin")
+        outputs.files(fileTree(layout.buildDirectory.dir("headless"))).withPropertyName("outputHeadless")
 
         commandLine("npx", "rollup", "-c")
     }
@@ -7,6 +7,7 @@ import replace from "@rollup/plugin-replace";
 import typescript from "@rollup/plugin-typescript";
 import url from "@rollup/plugin-url";
 import { minify as minifyJavascript } from "@swc/core";
+import MagicString from "magic-string";
 import license from "rollup-plugin-license";
 
 import { cssToModule } from "./tools/css-tools.js";
@@ -17,6 +18,64 @@ can play with a ComputerCraft computer, write and test programs and experiment
 to your heart's desire, without having to leave your browser!
 `.replaceAll("\n", " ").trim();
 
+const banner = `<%= pkg.name %>: Copyright <%= pkg.author %> <%= moment().format("YYYY") %>
+<% _.forEach(_.sortBy(dependencies, ["name"]), ({ name, author, license }) => { %>
+  - <%= name %>: Copyright <%= author ? author.name : "" %> (<%= license %>)<% }) %>
+
+@license
+  `;
+
+/**
+ * Plugins shared by the site and the worker.
+ *
+ * @param {boolean} minify
+ * @param {boolean} embedRom Whether to include the copy of the ROM embedded in the emulator, for when the packed ROM
+ *                           image cannot be fetched.
+ * @returns {import("rollup").Plugin[]}
+ */
+const commonPlugins = (minify, embedRom) => [
+  replace({
+    preventAssignment: true,
+
+    __embeddedRom__: JSON.stringify(embedRom),
+  }),
+
+  url({
+    limit: 1024,
+    fileName: "[name]-[hash][extname]",
+    include: ["**/*.worker.js", "**/*.png", "**/*.wasm", "**/*.bin"],
+  }),
+
+  typescript(),
+  resolve({ browser: true }),
+
+  {
+    name: "copy-cat-common",
+
+    async renderChunk(code) {
+      return minify ? (await minifyJavascript(code)).code : code;
+    },
+
+    async resolveId(source) {
+      if (source.startsWith("cct/")) return path.resolve("build/teaVM/" + source.substring(4));
+      if (source.startsWith("rom/")) return path.resolve("build/rom/" + source.substring(4));
+      return null;
+    },
+
+    async transform(input, id) {
+      // Send the HTTP API's requests through our cache (see src/web/ts/http/request.ts). XMLHttpRequest is bound
+      // inside the emulator's Javascript runtime only, so the rest of the page still uses the browser's
+      // implementation. The WebAssembly runtime calls into Javascript through its own glue code, and so is not
+      // affected.
+      if (id !== path.resolve("build/teaVM/classes.js") || !input.includes("XMLHttpRequest")) return null;
+
+      const code = new MagicString(input);
+      code.prepend(`import { CachingXMLHttpRequest as XMLHttpRequest } from ${JSON.stringify(path.resolve("src/web/ts/http/request.ts"))};\n`);
+      return { code: code.toString(), map: code.generateMap({ hires: true }) };
+    },
+  },
+];
+
 /**
  * @param {string} out
  * @param {boolean} minify
@@ -47,23 +106,10 @@ const makeSite = (out, minify) => ({
       __monaco__: "https://cdn.jsdelivr.net/npm/monaco-editor@0.55.1",
     }),
 
-    url({
-      limit: 1024,
-      fileName: "[name]-[hash][extname]",
-      include: ["**/*.worker.js", "**/*.png", "**/*.wasm"],
-    }),
-
-    typescript(),
-    resolve({ browser: true }),
+    ...commonPlugins(minify, true),
 
     license({
-      banner:
-        `<%= pkg.name %>: Copyright <%= pkg.author %> <%= moment().format("YYYY") %>
-<% _.forEach(_.sortBy(dependencies, ["name"]), ({ name, author, license }) => { %>
-  - <%= name %>: Copyright <%= author ? author.name : "" %> (<%= license %>)<% }) %>
-
-@license
-  `,
+      banner,
       thirdParty: { output: `${out}/dependencies.txt` },
     }),
 
@@ -76,10 +122,6 @@ const makeSite = (out, minify) => ({
         }
       },
 
-      async renderChunk(code) {
-        return minify ? (await minifyJavascript(code)).code : code;
-      },
-
       async generateBundle(_, bundle) {
         for (const [input, output] of [
           // This is the main entrypoint to our package
@@ -108,16 +150,64 @@ const makeSite = (out, minify) => ({
           source: (await fs.readFile(`src/web/public/${x}`, { encoding: "utf-8" })).replaceAll("{{version}}", version).replaceAll("{{description}}", description),
         })));
       },
-
-      async resolveId(source) {
-        if (source.startsWith("cct/")) return path.resolve("build/teaVM/" + source.substring(4));
-        return null;
-      },
     },
   ],
 });
 
+/**
+ * The worker used to run computers off the main thread (see src/web/ts/worker.ts). Workers cannot use requirejs, so
+ * this is built as a single self-contained script.
+ *
+ * @param {string} out
+ * @param {boolean} minify
+ * @returns {import("rollup").RollupOptions}
+ */
+const makeWorker = (out, minify) => ({
+  input: "src/web/ts/worker.ts",
+  output: {
+    file: `${out}/worker.js`,
+    format: "iife",
+    inlineDynamicImports: true,
+    freeze: true,
+    generatedCode: {
+      constBindings: true,
+      arrowFunctions: true,
+    }
+  },
+  context: "self",
+
+  plugins: [
+    ...commonPlugins(minify, false),
+    license({ banner }),
+  ],
+});
+
+/**
+ * The module used to run computers outside a browser (see src/web/ts/headless.ts and tools/headless.js).
+ *
+ * @param {string} out
+ * @returns {import("rollup").RollupOptions}
+ */
+const makeHeadless = out => ({
+  input: "src/web/ts/headless.ts",
+  output: {
+    file: `${out}/headless.js`,
+    format: "es",
+    inlineDynamicImports: true,
+    generatedCode: {
+      constBindings: true,
+      arrowFunctions: true,
+    }
+  },
+  context: "globalThis",
+
+  plugins: commonPlugins(false, true),
+});
+
 export default [
   makeSite("build/web", false),
+  makeWorker("build/web", false),
   makeSite("build/webMin", true),
+  makeWorker("build/webMin", true),
+  makeHeadless("build/headless"),
 ];
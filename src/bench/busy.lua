@@ -0,0 +1,13 @@
+-- Runs a CPU-bound loop for a fixed time (yielding regularly), to measure how ticks are shared between computers.
+
+local finish = os.epoch("utc") + 5000
+local iterations = 0
+while os.epoch("utc") < finish do
+  for _ = 1, 10000 do iterations = iterations + 1 end
+  os.queueEvent("bench_yield")
+  os.pullEvent("bench_yield")
+end
+
+local handle = fs.open("/.headless/output.json", "w")
+handle.write(textutils.serializeJSON({ iterations = iterations }))
+handle.close()
@@ -0,0 +1,18 @@
+-- Receives events queued by the benchmark runner, to measure the cost of converting event arguments.
+
+-- Tell the runner we're ready to receive events.
+fs.open("/.headless/ready", "w").close()
+
+local received = 0
+while true do
+  local event = os.pullEvent()
+  if event == "bench_event" then
+    received = received + 1
+  elseif event == "bench_done" then
+    break
+  end
+end
+
+local handle = fs.open("/.headless/output.json", "w")
+handle.write(textutils.serializeJSON({ received = received }))
+handle.close()
@@ -0,0 +1,53 @@
+-- Measures read, write and append throughput of the computer's file system (and so ComputerAccessMount).
+
+local chunk = ("x"):rep(4096)
+local chunks = 128 -- 512KiB in total.
+
+local function time(fn)
+  local start = os.epoch("utc")
+  fn()
+  return os.epoch("utc") - start
+end
+
+local results = { bytes = #chunk * chunks }
+
+results.write_ms = time(function()
+  local handle = fs.open("bench.bin", "wb")
+  for _ = 1, chunks do handle.write(chunk) end
+  handle.close()
+end)
+
+results.append_ms = time(function()
+  for i = 1, 200 do
+    local handle = fs.open("append.txt", "a")
+    handle.writeLine("Line " .. i)
+    handle.close()
+  end
+end)
+
+results.read_all_ms = time(function()
+  local handle = fs.open("bench.bin", "rb")
+  handle.readAll()
+  handle.close()
+end)
+
+results.read_chunks_ms = time(function()
+  local handle = fs.open("bench.bin", "rb")
+  while handle.read(4096) do end
+  handle.close()
+end)
+
+results.metadata_ms = time(function()
+  for _ = 1, 1000 do
+    fs.exists("bench.bin")
+    fs.isDir("bench.bin")
+    fs.getSize("bench.bin")
+  end
+end)
+
+fs.delete("bench.bin")
+fs.delete("append.txt")
+
+local handle = fs.open("/.headless/output.json", "w")
+handle.write(textutils.serializeJSON(results))
+handle.close()
@@ -0,0 +1,50 @@
+-- Fetches files from a local server (started by the benchmark runner), to measure the HTTP cache.
+
+-- Tell the runner we're ready, and wait for it to send the server's address.
+fs.open("/.headless/ready", "w").close()
+local _, base = os.pullEvent("bench_url")
+
+local function time(fn)
+  local start = os.epoch("utc")
+  fn()
+  return os.epoch("utc") - start
+end
+
+local function get(path)
+  local response, err = http.get(base .. path)
+  if not response then error(path .. ": " .. err, 0) end
+  local body = response.readAll()
+  response.close()
+  return body
+end
+
+local results = {}
+
+-- Fresh responses (Cache-Control: max-age) should only be fetched once.
+results.fresh_ms = time(function()
+  for _ = 1, 20 do get("/fresh") end
+end)
+
+-- Responses with an ETag should be revalidated each time, but only downloaded once.
+results.etag_ms = time(function()
+  for _ = 1, 20 do get("/etag") end
+end)
+
+-- Concurrent requests for the same file should only be sent once.
+results.concurrent_ms = time(function()
+  local url, remaining = base .. "/concurrent", 20
+  for _ = 1, remaining do http.request(url) end
+  while remaining > 0 do
+    local event, event_url, response = os.pullEvent()
+    if event == "http_success" and event_url == url then
+      response.close()
+      remaining = remaining - 1
+    elseif event == "http_failure" and event_url == url then
+      error("/concurrent: " .. response, 0)
+    end
+  end
+end)
+
+local handle = fs.open("/.headless/output.json", "w")
+handle.write(textutils.serializeJSON(results))
+handle.close()
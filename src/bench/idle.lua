@@ -0,0 +1,3 @@
+-- Sleeps for a fixed time, to measure the overhead of ticking idle computers.
+
+sleep(5)
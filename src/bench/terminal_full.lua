@@ -0,0 +1,14 @@
+-- Redraws the whole terminal every tick, to measure the cost of sending full terminal frames.
+
+local width, height = term.getSize()
+local line = ("#"):rep(width)
+local colours = { colours.red, colours.green, colours.blue, colours.yellow }
+
+for i = 1, 100 do
+  term.setBackgroundColour(colours[i % #colours + 1])
+  for y = 1, height do
+    term.setCursorPos(1, y)
+    term.write(line)
+  end
+  sleep(0)
+end
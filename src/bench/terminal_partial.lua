@@ -0,0 +1,9 @@
+-- Changes a single character of the terminal every tick, to measure the cost of sending partial terminal frames.
+
+local width, height = term.getSize()
+
+for i = 1, 100 do
+  term.setCursorPos(i % width + 1, i % height + 1)
+  term.write("#")
+  sleep(0)
+end
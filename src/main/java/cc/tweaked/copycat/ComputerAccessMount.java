@@ -3,185 +3,542 @@ package cc.tweaked.copycat;
 import cc.tweaked.copycat.js.ExtendedComputerDisplay;
 import cc.tweaked.copycat.js.ExtendedComputerDisplay.Result;
 import cc.tweaked.copycat.js.FileSystemEntry;
-import cc.tweaked.copycat.js.JsFileAttributes;
-import dan200.computercraft.api.filesystem.FileAttributes;
+import cc.tweaked.copycat.js.MoreJavascriptConv;
 import dan200.computercraft.api.filesystem.FileOperationException;
 import dan200.computercraft.api.filesystem.WritableMount;
-import dan200.computercraft.core.apis.handles.ArrayByteChannel;
 import org.teavm.jso.core.JSBoolean;
 import org.teavm.jso.typedarrays.Int8Array;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
 
 public class ComputerAccessMount implements WritableMount {
+    /**
+     * The minimum size a file or directory takes up, matching CC's own file mounts.
+     */
+    private static final long MINIMUM_FILE_SIZE = 500;
+
     private final ExtendedComputerDisplay computer;
+    private final EntryCache cache;
+    private final long capacity;
+
+    /**
+     * The total space taken up by this mount, or {@code -1} if not yet computed.
+     */
+    private long usedSpace = -1;
 
-    public ComputerAccessMount(ExtendedComputerDisplay computer) {
+    /**
+     * The space taken up by each entry (excluding the root), populated when {@link #usedSpace} is computed. This allows
+     * us to adjust the used space when a single entry changes, rather than measuring the whole mount again.
+     */
+    private final NavigableMap<String, Long> costs = new TreeMap<>();
+
+    public ComputerAccessMount(ExtendedComputerDisplay computer, long capacity) {
         this.computer = computer;
+        this.cache = new EntryCache(computer);
+        this.capacity = capacity;
+    }
+
+    /**
+     * Invalidate any cached information about a path, its children and its parent. This should be called when files
+     * are changed outside of this mount.
+     *
+     * @param path The path which has changed.
+     */
+    public void invalidate(@Nonnull String path) {
+        cache.invalidate(path);
+        if (path.isEmpty()) {
+            usedSpace = -1;
+            return;
+        }
+        if (usedSpace < 0) return;
+
+        long oldSize = forget(path);
+        usedSpace += measure(path, computer.getEntry(path)) - oldSize;
+
+        // The change may also have created parent directories.
+        for (int index = path.lastIndexOf('/'); index > 0; index = path.lastIndexOf('/', index - 1)) {
+            String parent = path.substring(0, index);
+            if (costs.containsKey(parent) || computer.getEntry(parent) == null) continue;
+            costs.put(parent, MINIMUM_FILE_SIZE);
+            usedSpace += MINIMUM_FILE_SIZE;
+        }
+    }
+
+    private static long cost(long size) {
+        return Math.max(size, MINIMUM_FILE_SIZE);
+    }
+
+    private long getUsedSpace() {
+        if (usedSpace < 0) {
+            costs.clear();
+            usedSpace = measure("", computer.getEntry(""));
+        }
+        return usedSpace;
+    }
+
+    /**
+     * Remove the recorded cost of an entry and all of its children.
+     *
+     * @param path The path of this entry.
+     * @return The space this entry took up.
+     */
+    private long forget(String path) {
+        Long own = costs.remove(path);
+        long size = own == null ? 0 : own;
+
+        // '0' is the character after '/', so this covers every path starting with "path/".
+        Map<String, Long> children = costs.subMap(path + "/", true, path + "0", false);
+        for (long child : children.values()) size += child;
+        children.clear();
+        return size;
+    }
+
+    /**
+     * Compute the space taken up by an entry and all of its children. This deliberately bypasses the cache, to avoid
+     * evicting more useful entries.
+     *
+     * @param path  The path of this entry.
+     * @param entry The entry to measure.
+     * @return The space this entry takes up.
+     */
+    private long measure(String path, @Nullable FileSystemEntry entry) {
+        if (entry == null) return 0;
+        if (!entry.isDirectory()) {
+            long size = cost((long) entry.getAttributes().getSize());
+            costs.put(path, size);
+            return size;
+        }
+
+        long size = 0;
+        if (!path.isEmpty()) {
+            size = MINIMUM_FILE_SIZE;
+            costs.put(path, size);
+        }
+        for (String child : entry.getChildren()) {
+            String childPath = path.isEmpty() ? child : path + "/" + child;
+            size += measure(childPath, computer.getEntry(childPath));
+        }
+        return size;
+    }
+
+    /**
+     * Check there is enough space to change the space taken up by some entries.
+     *
+     * @param path    The path being changed.
+     * @param newCost The new space these entries will take up.
+     * @param oldCost The space these entries currently take up.
+     * @throws FileOperationException If there is not enough space.
+     */
+    private void checkSpace(String path, long newCost, long oldCost) throws FileOperationException {
+        long delta = newCost - oldCost;
+        if (delta > 0 && getUsedSpace() + delta > capacity) throw new FileOperationException(path, "Out of space");
+    }
+
+    private long getCost(String path) {
+        getUsedSpace();
+        Long cost = costs.get(path);
+        return cost == null ? 0 : cost;
+    }
+
+    /**
+     * Set the space taken up by a single entry. This should be called after the entry has been changed, and after
+     * checking there is enough space with {@link #checkSpace(String, long, long)}.
+     *
+     * @param path The path which has changed.
+     * @param cost The new space this entry takes up.
+     */
+    private void setCost(String path, long cost) {
+        usedSpace = getUsedSpace() + cost - getCost(path);
+        costs.put(path, cost);
+    }
+
+    /**
+     * Find the directories which must be created in order to create a path.
+     *
+     * @param path The path to create.
+     * @return The missing directories.
+     */
+    private List<String> getMissingDirectories(String path) {
+        List<String> missing = new ArrayList<>();
+        for (String parent = path; !parent.isEmpty() && cache.get(parent) == null; ) {
+            missing.add(parent);
+            int index = parent.lastIndexOf('/');
+            parent = index < 0 ? "" : parent.substring(0, index);
+        }
+        return missing;
+    }
+
+    private static String getParent(String path) {
+        int index = path.lastIndexOf('/');
+        return index < 0 ? "" : path.substring(0, index);
     }
 
     @Override
     public void makeDirectory(@Nonnull String path) throws IOException {
+        List<String> created = getMissingDirectories(path);
+        if (created.isEmpty()) {
+            computer.createDirectory(path).getOrThrow();
+            return;
+        }
+
+        checkSpace(path, created.size() * MINIMUM_FILE_SIZE, 0);
+        cache.invalidateAncestors(path);
         computer.createDirectory(path).getOrThrow();
+        for (String directory : created) setCost(directory, MINIMUM_FILE_SIZE);
     }
 
     @Override
     public void delete(@Nonnull String path) throws IOException {
         if (path.isEmpty()) throw new FileOperationException(path, "Access denied");
 
+        if (usedSpace >= 0) usedSpace -= forget(path);
+        cache.invalidate(path);
         computer.deleteEntry(path);
     }
 
     @Override
     public void rename(String source, String dest) throws IOException {
         if (source.isEmpty()) throw new FileOperationException(source, "Access denied");
-        // TODO: Implement me again.
-        throw new FileOperationException("Cannot move files");
+
+        // Moving may create the destination's parent directories, which need to be charged for.
+        List<String> created = getMissingDirectories(getParent(dest));
+        checkSpace(dest, created.size() * MINIMUM_FILE_SIZE, 0);
+
+        cache.invalidate(source);
+        cache.invalidateAncestors(dest);
+        computer.moveEntry(source, dest).getOrThrow();
+
+        for (String directory : created) setCost(directory, MINIMUM_FILE_SIZE);
+        if (usedSpace >= 0) {
+            // Move the recorded costs of the entry and its children to their new paths.
+            Long own = costs.remove(source);
+            if (own != null) costs.put(dest, own);
+
+            Map<String, Long> children = costs.subMap(source + "/", true, source + "0", false);
+            Map<String, Long> moved = new TreeMap<>(children);
+            children.clear();
+            for (var entry : moved.entrySet()) costs.put(dest + entry.getKey().substring(source.length()), entry.getValue());
+        }
     }
 
     @Nonnull
     @Override
     public SeekableByteChannel openForWrite(@Nonnull String path) throws IOException {
+        // The file is truncated when opened, so release any space it used.
+        EntryCache.Entry existing = cache.get(path);
+        if (existing == null || !existing.isDirectory()) checkSpace(path, MINIMUM_FILE_SIZE, getCost(path));
+
+        cache.invalidate(path);
         FileSystemEntry entry = computer.createFile(path).getOrThrow();
-        return new Writer(entry);
+        setCost(path, MINIMUM_FILE_SIZE);
+        return new Writer(path, entry, 0);
     }
 
     @Nonnull
     @Override
     public SeekableByteChannel openForAppend(@Nonnull String path) throws IOException {
+        boolean exists = cache.get(path) != null;
+        if (!exists) checkSpace(path, MINIMUM_FILE_SIZE, 0);
+
+        cache.invalidate(path);
         FileSystemEntry entry = computer.createFile(path).getOrThrow();
-        return new Writer(entry, entry.getContents());
+        if (!exists) setCost(path, MINIMUM_FILE_SIZE);
+        return new Writer(path, entry, (int) entry.getAttributes().getSize());
     }
 
     @Override
     public long getRemainingSpace() {
-        return Long.MAX_VALUE;
+        return Math.max(capacity - getUsedSpace(), 0);
     }
 
     @Override
     public long getCapacity() {
-        return Long.MAX_VALUE;
+        return capacity;
     }
 
     @Override
     public boolean exists(@Nonnull String path) {
-        return computer.getEntry(path) != null;
+        return cache.get(path) != null;
     }
 
     @Override
     public boolean isDirectory(@Nonnull String path) {
-        FileSystemEntry entry = computer.getEntry(path);
+        EntryCache.Entry entry = cache.get(path);
         return entry != null && entry.isDirectory();
     }
 
     @Override
     public void list(@Nonnull String path, @Nonnull List<String> contents) throws IOException {
-        FileSystemEntry entry = computer.getEntry(path);
+        EntryCache.Entry entry = cache.get(path);
         if (entry == null || !entry.isDirectory()) throw new FileOperationException(path, "Not a directory");
         Collections.addAll(contents, entry.getChildren());
     }
 
     @Override
     public long getSize(@Nonnull String path) throws IOException {
-        FileSystemEntry entry = computer.getEntry(path);
+        EntryCache.Entry entry = cache.get(path);
         if (entry == null) throw new FileOperationException(path, "No such file");
-        return entry.isDirectory() ? 0 : entry.getContents().length;
+        return entry.isDirectory() ? 0 : entry.getAttributes().size();
     }
 
     @Nonnull
     @Override
     public SeekableByteChannel openForRead(@Nonnull String path) throws IOException {
-        FileSystemEntry entry = computer.getEntry(path);
+        EntryCache.Entry entry = cache.get(path);
         if (entry == null || entry.isDirectory()) throw new FileOperationException(path, "No such file");
-        return new ArrayByteChannel(entry.getContents());
+        return new Reader(entry.entry(), entry.getAttributes().size());
     }
 
     @Nonnull
     @Override
     public BasicFileAttributes getAttributes(@Nonnull String path) throws IOException {
-        FileSystemEntry entry = computer.getEntry(path);
+        EntryCache.Entry entry = cache.get(path);
         if (entry == null) throw new FileOperationException(path, "No such file");
-        JsFileAttributes attr = entry.getAttributes();
-        return new FileAttributes(
-            attr.getDirectory(), (long) attr.getSize(),
-            FileTime.fromMillis((long) attr.getCreation()), FileTime.fromMillis((long) attr.getModification())
-        );
+        return entry.getAttributes();
     }
 
-    private static class Writer implements SeekableByteChannel {
-        private static final Int8Array EMPTY = Int8Array.create(0);
+    /**
+     * Reads a file in chunks, rather than copying the whole file into Java when it is opened.
+     */
+    private static class Reader implements SeekableByteChannel {
+        private static final int CHUNK_SIZE = 8192;
+
+        private final FileSystemEntry entry;
+        private long size;
+
+        private boolean closed = false;
+        private long position;
+
+        private byte[] chunk;
+        private long chunkStart;
+
+        private Reader(@Nonnull FileSystemEntry entry, long size) {
+            this.entry = entry;
+            this.size = size;
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) throws IOException {
+            if (closed) throw new ClosedChannelException();
+            if (position >= size) return -1;
+
+            int read = 0;
+            while (buffer.hasRemaining() && position < size) {
+                int wanted = (int) Math.min(buffer.remaining(), size - position);
+
+                if (chunk == null || position < chunkStart || position >= chunkStart + chunk.length) {
+                    if (wanted >= CHUNK_SIZE) {
+                        // Large reads can skip the chunk entirely.
+                        byte[] contents = entry.readContents((int) position, wanted);
+                        if (contents.length == 0) {
+                            truncated();
+                            break;
+                        }
+                        buffer.put(contents);
+                        position += contents.length;
+                        read += contents.length;
+                        continue;
+                    }
+
+                    chunk = entry.readContents((int) position, CHUNK_SIZE);
+                    chunkStart = position;
+                    if (chunk.length == 0) {
+                        truncated();
+                        break;
+                    }
+                }
+
+                int offset = (int) (position - chunkStart);
+                int length = Math.min(wanted, chunk.length - offset);
+                buffer.put(chunk, offset, length);
+                position += length;
+                read += length;
+            }
+
+            // If the buffer is full, we must return 0 rather than -1, as we're not at the end of the file.
+            return read == 0 && position >= size ? -1 : read;
+        }
+
+        /**
+         * Called when there is nothing left to read before {@link #size}, as the file has been truncated since it
+         * was opened. We treat the current position as the end of the file, so later reads return end of stream.
+         */
+        private void truncated() {
+            size = position;
+        }
+
+        @Override
+        public int write(ByteBuffer buffer) throws IOException {
+            if (closed) throw new ClosedChannelException();
+            throw new NonWritableChannelException();
+        }
+
+        @Override
+        public long position() throws IOException {
+            if (closed) throw new ClosedChannelException();
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            if (closed) throw new ClosedChannelException();
+            if (newPosition < 0) throw new IllegalArgumentException("Cannot seek before the beginning of the stream");
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            if (closed) throw new ClosedChannelException();
+            return size;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            if (closed) throw new ClosedChannelException();
+            throw new NonWritableChannelException();
+        }
 
+        @Override
+        public boolean isOpen() {
+            return !closed;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            chunk = null;
+        }
+    }
+
+    /**
+     * Buffers writes to a file, and then sends them to the file on close.
+     * <p>
+     * We only buffer the part of the file starting at {@link #bufferStart}. For files opened for writing, this is the
+     * whole file. When appending, this starts at the end of the existing file, and so the existing contents only need
+     * to be read if the writer seeks backwards.
+     */
+    private final class Writer implements SeekableByteChannel {
+        private static final byte[] EMPTY = new byte[0];
+
+        private final String path;
         private final FileSystemEntry entry;
 
         private boolean closed = false;
-        private byte[] contents;
+        private byte[] contents = EMPTY;
+        private int bufferStart;
         private int position;
         private int size;
 
-        private Writer(@Nonnull FileSystemEntry entry) {
+        private Writer(@Nonnull String path, @Nonnull FileSystemEntry entry, int existingSize) {
+            this.path = path;
             this.entry = entry;
+            this.bufferStart = this.position = this.size = existingSize;
         }
 
-        private Writer(@Nonnull FileSystemEntry entry, byte[] existing) {
-            this.entry = entry;
-            this.contents = existing;
-            this.position = this.size = existing.length;
+        private void setSize(int newSize) throws IOException {
+            if (newSize == size) return;
+            checkSpace(path, cost(newSize), getCost(path));
+            setCost(path, cost(newSize));
+            size = newSize;
         }
 
         @Override
-        public long position() {
+        public long position() throws IOException {
+            if (closed) throw new ClosedChannelException();
             return position;
         }
 
         @Override
-        public long size() {
+        public long size() throws IOException {
+            if (closed) throw new ClosedChannelException();
             return size;
         }
 
         @Override
         public SeekableByteChannel truncate(long size) throws IOException {
-            throw new IOException("Cannot truncate");
+            if (closed) throw new ClosedChannelException();
+            if (size < 0) throw new IllegalArgumentException("Cannot truncate to a negative size");
+            if (size >= this.size) return this;
+
+            int newSize = (int) size;
+            if (newSize < bufferStart) {
+                // We're discarding everything we've written, so just start the buffer from the truncation point.
+                Arrays.fill(contents, (byte) 0);
+                bufferStart = newSize;
+            } else {
+                // Clear the truncated region, so that any later writes past the end will be padded with zeros.
+                Arrays.fill(contents, newSize - bufferStart, contents.length, (byte) 0);
+            }
+
+            setSize(newSize);
+            if (position > newSize) position = newSize;
+            return this;
         }
 
         @Override
         public SeekableByteChannel position(long newPosition) throws IOException {
+            if (closed) throw new ClosedChannelException();
+            if (newPosition < 0) throw new IllegalArgumentException("Cannot seek before the beginning of the stream");
             if (newPosition > Integer.MAX_VALUE) throw new IOException("Cannot seek beyond 2^31");
             this.position = (int) newPosition;
             return this;
         }
 
+        /**
+         * Ensure the buffer covers the region from {@link #position} to {@code position + extra}.
+         *
+         * @param extra The number of bytes which are about to be written.
+         * @throws IOException If the file would become too large.
+         */
         private void preWrite(int extra) throws IOException {
             int end = position + extra;
             if (end < 0 || end > Integer.MAX_VALUE >> 1) throw new IOException("File is too large");
 
-            if (contents == null) {
-                // Allocate an initial buffer
-                contents = new byte[Math.max(16, end)];
-            } else if (end > contents.length) {
+            if (position < bufferStart) {
+                // We've seeked backwards into the existing file, so need to read the skipped section.
+                byte[] existing = entry.readContents(position, bufferStart - position);
+                int newCapacity = Math.max(contents.length + (bufferStart - position), end - position);
+                byte[] newContents = new byte[newCapacity];
+                System.arraycopy(existing, 0, newContents, 0, existing.length);
+                System.arraycopy(contents, 0, newContents, bufferStart - position, contents.length);
+
+                contents = newContents;
+                bufferStart = position;
+            }
+
+            int bufferEnd = end - bufferStart;
+            if (bufferEnd > contents.length) {
                 // Grow our existing buffer
-                int newCapacity = contents.length << 1;
-                if (newCapacity - end < 0) newCapacity = end;
+                int newCapacity = Math.max(16, contents.length << 1);
+                if (newCapacity - bufferEnd < 0) newCapacity = bufferEnd;
                 contents = Arrays.copyOf(contents, newCapacity);
             }
         }
 
         @Override
         public int write(ByteBuffer buffer) throws IOException {
-            if (closed) throw new IOException("Stream is closed");
+            if (closed) throw new ClosedChannelException();
 
             int length = buffer.remaining();
             preWrite(length);
-            int position = this.position;
-            for (int i = 0; i < length; i++) contents[position + i] = buffer.get();
-            size = Math.max(size, this.position += length);
+            if (position + length > size) setSize(position + length);
+            buffer.get(contents, position - bufferStart, length);
+            position += length;
             return length;
         }
 
@@ -195,14 +552,12 @@ public class ComputerAccessMount implements WritableMount {
             if (closed) return;
             closed = true;
 
-            Int8Array contentsArray;
-            if (contents == null) {
-                contentsArray = EMPTY;
-            } else {
-                contentsArray = Int8Array.copyFromJavaArray(contents);
-            }
-            Result<JSBoolean> result = entry.setContents(contentsArray);
+            // Only send the section of the file we've actually changed.
+            Int8Array buffer = MoreJavascriptConv.ofByteArray(contents);
+            Int8Array changed = Int8Array.create(buffer.getBuffer(), buffer.getByteOffset(), size - bufferStart);
+            Result<JSBoolean> result = entry.writeContents(bufferStart, changed);
             contents = null;
+            cache.invalidateEntry(path);
             result.getOrThrow();
         }
 
@@ -0,0 +1,90 @@
+package cc.tweaked.copycat;
+
+import cc.tweaked.copycat.js.MetricSnapshot;
+import dan200.computercraft.core.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aggregates the metrics for a single computer.
+ * <p>
+ * Metrics are stored in flat arrays indexed by {@link Metric#id()}, so observing a metric never allocates. Events are
+ * recorded in a histogram with power-of-two buckets, where bucket {@code i} holds values in {@code [2^(i-1), 2^i)}.
+ */
+final class ComputerMetrics {
+    private static final int BUCKETS = 64;
+
+    private Metric[] metrics = new Metric[0];
+    private long[] counts = new long[0];
+    private long[] totals = new long[0];
+    private long[] maximums = new long[0];
+    private long[] buckets = new long[0];
+
+    void observe(Metric.Counter counter) {
+        int id = register(counter);
+        counts[id]++;
+    }
+
+    void observe(Metric.Event event, long value) {
+        int id = register(event);
+        counts[id]++;
+        totals[id] += value;
+        if (value > maximums[id]) maximums[id] = value;
+
+        int bucket = value <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(value));
+        buckets[id * BUCKETS + bucket]++;
+    }
+
+    private int register(Metric metric) {
+        int id = metric.id();
+        if (id >= metrics.length) {
+            int size = Math.max(id + 1, metrics.length * 2);
+            metrics = Arrays.copyOf(metrics, size);
+            counts = Arrays.copyOf(counts, size);
+            totals = Arrays.copyOf(totals, size);
+            maximums = Arrays.copyOf(maximums, size);
+            buckets = Arrays.copyOf(buckets, size * BUCKETS);
+        }
+
+        metrics[id] = metric;
+        return id;
+    }
+
+    /**
+     * Clear all recorded metrics.
+     */
+    void reset() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(totals, 0);
+        Arrays.fill(maximums, 0);
+        Arrays.fill(buckets, 0);
+    }
+
+    /**
+     * Take a snapshot of all metrics which have been observed.
+     *
+     * @return The current metrics.
+     */
+    MetricSnapshot[] snapshot() {
+        List<MetricSnapshot> snapshot = new ArrayList<>();
+        for (int id = 0; id < metrics.length; id++) {
+            Metric metric = metrics[id];
+            if (metric == null || counts[id] == 0) continue;
+
+            // Trim any empty buckets from the end of the histogram.
+            int offset = id * BUCKETS, last = BUCKETS;
+            while (last > 0 && buckets[offset + last - 1] == 0) last--;
+            double[] histogram = new double[last];
+            for (int i = 0; i < last; i++) histogram[i] = buckets[offset + i];
+
+            snapshot.add(MetricSnapshot.create(
+                metric.name(), metric instanceof Metric.Event ? "event" : "counter",
+                counts[id], totals[id], maximums[id], histogram
+            ));
+        }
+
+        return snapshot.toArray(new MetricSnapshot[0]);
+    }
+}
@@ -1,7 +1,14 @@
 package cc.tweaked.copycat;
 
+import cc.tweaked.copycat.js.ComputerTime;
+import cc.tweaked.copycat.js.EventStats;
 import cc.tweaked.copycat.js.ExtendedComputerDisplay;
 import cc.tweaked.copycat.js.ExtendedComputerHandle;
+import cc.tweaked.copycat.js.MemoryStats;
+import cc.tweaked.copycat.js.MetricSnapshot;
+import cc.tweaked.copycat.js.QueuedEvent;
+import cc.tweaked.copycat.js.RecordedInput;
+import cc.tweaked.copycat.js.TickStats;
 import cc.tweaked.web.Main;
 import cc.tweaked.web.js.JavascriptConv;
 import cc.tweaked.web.peripheral.SpeakerPeripheral;
@@ -9,7 +16,6 @@ import cc.tweaked.web.peripheral.TickablePeripheral;
 import dan200.computercraft.api.filesystem.WritableMount;
 import dan200.computercraft.api.peripheral.IPeripheral;
 import dan200.computercraft.core.ComputerContext;
-import dan200.computercraft.core.apis.handles.ArrayByteChannel;
 import dan200.computercraft.core.apis.transfer.TransferredFile;
 import dan200.computercraft.core.apis.transfer.TransferredFiles;
 import dan200.computercraft.core.computer.Computer;
@@ -17,7 +23,6 @@ import dan200.computercraft.core.computer.ComputerEnvironment;
 import dan200.computercraft.core.computer.ComputerSide;
 import dan200.computercraft.core.metrics.Metric;
 import dan200.computercraft.core.metrics.MetricsObserver;
-import dan200.computercraft.core.terminal.Palette;
 import dan200.computercraft.core.terminal.Terminal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,30 +30,175 @@ import org.teavm.jso.JSObject;
 import org.teavm.jso.typedarrays.Int8Array;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 
 public class CopyCatComputer implements ComputerEnvironment, ExtendedComputerHandle, MetricsObserver {
     private static final Logger LOG = LoggerFactory.getLogger(CopyCatComputer.class);
 
     private static final ComputerSide[] SIDES = ComputerSide.values();
+
+    /**
+     * The number of ticks we continue to tick an off computer for after receiving some input. This should be longer
+     * than the delay {@link Computer} waits before starting up.
+     */
+    private static final int WAKE_TICKS = 100;
+
+    /**
+     * How quickly {@link #averageTickTime} responds to changes in tick time.
+     */
+    private static final double AVERAGE_WEIGHT = 0.1;
+
+    /**
+     * The maximum number of consecutive ticks a computer can be deferred for.
+     */
+    private static final int MAX_DEFERRED = 4;
+
     private boolean terminalChanged = false;
     private final Terminal terminal = new Terminal(Main.computerTermWidth, Main.computerTermHeight, true, () -> terminalChanged = true);
+    private final TerminalMonitor terminalMonitor = new TerminalMonitor(terminal);
     private final Computer computer;
     private final ExtendedComputerDisplay computerAccess;
+    private final ComputerMetrics metrics = new ComputerMetrics();
+    private final EventQueue events = new EventQueue();
+    private final LuaAgent agent = new LuaAgent();
+    private @Nullable ComputerAccessMount mount;
     private boolean disposed = false;
     private boolean customSize;
 
     private @Nullable String oldLabel;
     private boolean oldOn;
+    private int wakeTicks = WAKE_TICKS;
+
+    private boolean visible = true;
+    private long lastInput = Main.getTicks();
+    private long lastOutput = Main.getTicks();
+    private boolean hibernating;
+    private boolean unloading;
+    private boolean resumeOn;
+
+    private @Nullable List<RecordedInput> recording;
+    private long recordingStart;
+
+    private double totalTime;
+    private double lastTickTime;
+    private double averageTickTime;
+    private long deferredTicks;
+    private int consecutiveDeferred;
 
     public CopyCatComputer(ComputerContext context, ExtendedComputerDisplay computerAccess) {
         this.computerAccess = computerAccess;
         this.computer = new Computer(context, this, terminal, 0);
+        computer.addApi(agent);
 
         if (!disposed) computer.turnOn();
     }
 
+    /**
+     * Determine whether this computer is off and has nothing to do, and so does not need to be ticked.
+     *
+     * @return Whether this computer is idle.
+     */
+    public boolean isIdle() {
+        return !disposed && wakeTicks <= 0 && !oldOn && !computer.isOn() && !terminalChanged
+            && Objects.equals(oldLabel, computer.getLabel())
+            && (customSize || (terminal.getWidth() == Main.computerTermWidth && terminal.getHeight() == Main.computerTermHeight));
+    }
+
+    private void wake() {
+        wakeTicks = WAKE_TICKS;
+        lastInput = Main.getTicks();
+        resume();
+    }
+
+    /**
+     * Determine whether this computer is hibernating, and so should not be ticked. This puts the computer into
+     * hibernation if it is hidden or has been idle for too long.
+     * <p>
+     * If {@link Main#hibernateUnload} is set, the computer is shut down when it starts hibernating, and so is still
+     * ticked until it has finished shutting down.
+     *
+     * @return Whether this computer is hibernating.
+     */
+    public boolean isHibernating() {
+        if (!hibernating) {
+            if (!shouldHibernate()) return false;
+
+            hibernating = true;
+            if (Main.hibernateUnload && computer.isOn()) {
+                unloading = resumeOn = true;
+                computer.shutdown();
+            }
+        }
+
+        if (unloading) {
+            // Keep ticking the computer until it has finished shutting down.
+            if (computer.isOn()) return false;
+            unloading = false;
+        }
+
+        return true;
+    }
+
+    private boolean shouldHibernate() {
+        if (disposed) return false;
+
+        long now = Main.getTicks();
+        if (now - lastInput < WAKE_TICKS) return false;
+        if (Main.hibernateBackground && !visible) return true;
+
+        long idleTicks = Main.hibernateIdleTimeout * TickScheduler.TICKS_PER_SECOND;
+        return Main.hibernateIdleTimeout > 0 && now - Math.max(lastInput, lastOutput) >= idleTicks;
+    }
+
+    private void resume() {
+        if (!hibernating) return;
+        hibernating = false;
+        unloading = false;
+
+        if (resumeOn) {
+            resumeOn = false;
+            computer.turnOn();
+        }
+    }
+
+    /**
+     * Determine whether this computer has been using more than its share of each tick.
+     *
+     * @param fairShare The time each computer would get if the tick was split evenly, in milliseconds.
+     * @return Whether this computer is overrunning.
+     */
+    boolean isOverrunning(double fairShare) {
+        return averageTickTime > fairShare;
+    }
+
+    /**
+     * Record how long a tick of this computer took.
+     *
+     * @param time The time taken, in milliseconds.
+     */
+    void recordTickTime(double time) {
+        totalTime += time;
+        lastTickTime = time;
+        averageTickTime += (time - averageTickTime) * AVERAGE_WEIGHT;
+        consecutiveDeferred = 0;
+    }
+
+    /**
+     * Attempt to put off ticking this computer until the next tick. This fails if the computer has already been
+     * deferred too many times in a row, to ensure it still makes progress.
+     *
+     * @return Whether this computer was deferred.
+     */
+    boolean tryDefer() {
+        if (consecutiveDeferred >= MAX_DEFERRED) return false;
+        consecutiveDeferred++;
+        deferredTicks++;
+        return true;
+    }
+
     /**
      * Tick this computer.
      *
@@ -56,6 +206,9 @@ public class CopyCatComputer implements ComputerEnvironment, ExtendedComputerHan
      */
     public boolean tick() {
         if (disposed && computer.isOn()) computer.unload();
+        if (wakeTicks > 0) wakeTicks--;
+
+        events.drain(computer);
 
         try {
             computer.tick();
@@ -63,6 +216,12 @@ public class CopyCatComputer implements ComputerEnvironment, ExtendedComputerHan
             LOG.error("Error when ticking computer", e);
         }
 
+        if (agent.getMemory().takeShutdownRequest()) {
+            LOG.warn("Computer is still using more than {} bytes of memory, shutting down", Main.computerMemoryLimit);
+            computer.shutdown();
+        }
+        if (!computer.isOn()) agent.reset();
+
         var newLabel = computer.getLabel();
         var newOn = computer.isOn();
         if (!Objects.equals(oldLabel, newLabel) || oldOn != newOn) {
@@ -71,7 +230,7 @@ public class CopyCatComputer implements ComputerEnvironment, ExtendedComputerHan
 
         if (!customSize && (terminal.getWidth() != Main.computerTermWidth || terminal.getHeight() != Main.computerTermHeight)) {
             terminal.resize(Main.computerTermWidth, Main.computerTermHeight);
-            computer.queueEvent("term_resize", null);
+            events.add("term_resize", null, Main.eventQueueLimit);
         }
 
         for (ComputerSide side : SIDES) {
@@ -79,32 +238,20 @@ public class CopyCatComputer implements ComputerEnvironment, ExtendedComputerHan
             if (peripheral instanceof TickablePeripheral toTick) toTick.tick();
         }
 
-        if (terminalChanged) {
-            terminalChanged = false;
-            computerAccess.updateTerminal(
-                terminal.getWidth(), terminal.getHeight(),
-                terminal.getCursorX(), terminal.getCursorY(),
-                terminal.getCursorBlink(), terminal.getTextColour()
-            );
-
-            for (int i = 0; i < terminal.getHeight(); i++) {
-                computerAccess.setTerminalLine(i,
-                    terminal.getLine(i).toString(),
-                    terminal.getTextColourLine(i).toString(),
-                    terminal.getBackgroundColourLine(i).toString()
-                );
-            }
+        computerAccess.commitFileSystem();
 
-            Palette palette = terminal.getPalette();
-            for (int i = 0; i < 16; i++) {
-                double[] colours = palette.getColour(i);
-                computerAccess.setPaletteColour(15 - i, colours[0], colours[1], colours[2]);
-            }
+        return disposed && !computer.isOn();
+    }
 
-            computerAccess.flushTerminal();
+    /**
+     * Send any changes to the terminal to the display.
+     */
+    public void updateDisplay() {
+        if (terminalChanged) {
+            terminalChanged = false;
+            lastOutput = Main.getTicks();
+            terminalMonitor.flush(computerAccess);
         }
-
-        return disposed && !computer.isOn();
     }
 
     @Override
@@ -120,7 +267,7 @@ public class CopyCatComputer implements ComputerEnvironment, ExtendedComputerHan
     @Nullable
     @Override
     public WritableMount createRootMount() {
-        return new ComputerAccessMount(computerAccess);
+        return mount = new ComputerAccessMount(computerAccess, Main.computerSpaceLimit > 0 ? Main.computerSpaceLimit : Long.MAX_VALUE);
     }
 
     @Override
@@ -130,53 +277,164 @@ public class CopyCatComputer implements ComputerEnvironment, ExtendedComputerHan
 
     @Override
     public void observe(Metric.Counter counter) {
+        if (Main.metricsEnabled) metrics.observe(counter);
     }
 
     @Override
     public void observe(Metric.Event event, long value) {
+        if (Main.metricsEnabled) metrics.observe(event, value);
     }
 
     @Override
     public void setLabel(@Nullable String label) {
+        record("setLabel", RecordedInput.of(label));
+        wake();
         computer.setLabel(label);
     }
 
     @Override
     public void event(String event, @Nullable JSObject[] args) {
-        computer.queueEvent(event, JavascriptConv.toJava(args));
+        record("event", RecordedInput.of(event), RecordedInput.of(args));
+        wake();
+        events.add(event, JavascriptConv.toJava(args), Main.eventQueueLimit);
+    }
+
+    @Override
+    public void events(QueuedEvent[] queued) {
+        record("events", RecordedInput.of(queued));
+        wake();
+        for (var event : queued) events.add(event.getName(), JavascriptConv.toJava(event.getArgs()), Main.eventQueueLimit);
+    }
+
+    @Override
+    public EventStats getEventStats() {
+        return EventStats.create(events.getQueued(), events.getCoalesced(), events.getDropped());
     }
 
     @Override
     public void shutdown() {
+        record("shutdown");
+        // Don't turn an unloaded computer back on, just to shut it down again.
+        resumeOn = false;
+        wake();
         computer.shutdown();
     }
 
     @Override
     public void turnOn() {
+        record("turnOn");
+        wake();
         computer.turnOn();
     }
 
     @Override
     public void reboot() {
+        record("reboot");
+        wake();
         computer.reboot();
     }
 
     @Override
     public void dispose() {
         disposed = true;
+        resume();
+    }
+
+    @Override
+    public void setVisible(boolean visible) {
+        record("setVisible", RecordedInput.of(visible));
+        this.visible = visible;
+        if (visible) wake();
+    }
+
+    @Override
+    public MetricSnapshot[] getMetricsSnapshot(boolean reset) {
+        var snapshot = metrics.snapshot();
+        if (reset) metrics.reset();
+        return snapshot;
+    }
+
+    @Override
+    public TickStats getTickStats() {
+        return Main.getScheduler().getStats();
+    }
+
+    @Override
+    public ComputerTime getComputerTime() {
+        return ComputerTime.create(totalTime, lastTickTime, averageTickTime, deferredTicks);
+    }
+
+    @Override
+    public void startRecording() {
+        recording = new ArrayList<>();
+        recordingStart = Main.getTicks();
+    }
+
+    @Override
+    public RecordedInput[] stopRecording() {
+        if (recording == null) return new RecordedInput[0];
+
+        var inputs = recording.toArray(new RecordedInput[0]);
+        recording = null;
+        return inputs;
+    }
+
+    private void record(String method, JSObject... args) {
+        if (recording != null) recording.add(RecordedInput.create(Main.getTicks() - recordingStart, method, args));
+    }
+
+    @Override
+    public void startProfiler(int interval) {
+        if (computer.isOn() && agent.hasProgramHooks()) {
+            LOG.warn("Computer has set its own debug hook, so code running under that hook will not be profiled");
+        }
+        agent.getProfiler().start(interval);
+    }
+
+    @Override
+    public String stopProfiler() {
+        agent.getProfiler().stop();
+        return agent.getProfiler().getProfile();
+    }
+
+    @Override
+    public String getProfile() {
+        return agent.getProfiler().getProfile();
+    }
+
+    @Override
+    public MemoryStats getMemoryStats() {
+        var memory = agent.getMemory();
+        return MemoryStats.create(memory.getUsage(), memory.getPeak(), Main.computerMemoryLimit);
     }
 
     @Override
     public void resize(int width, int height) {
+        record("resize", RecordedInput.of(width), RecordedInput.of(height));
+        wake();
         customSize = true;
         if (terminal.getWidth() != width || terminal.getHeight() != height) {
             terminal.resize(width, height);
-            computer.queueEvent("term_resize", null);
+            events.add("term_resize", null, Main.eventQueueLimit);
         }
     }
 
+    @Override
+    public void filesChanged(String path) {
+        record("filesChanged", RecordedInput.of(path));
+        if (mount != null) mount.invalidate(path);
+    }
+
+    @Override
+    public void redrawTerminal() {
+        terminalMonitor.redraw();
+        terminalChanged = true;
+    }
+
     @Override
     public void setPeripheral(String sideName, @Nullable String kind) {
+        record("setPeripheral", RecordedInput.of(sideName), RecordedInput.of(kind));
+        wake();
         var side = ComputerSide.valueOfInsensitive(sideName);
         if (side == null) throw new IllegalArgumentException("Unknown side");
 
@@ -194,14 +452,20 @@ public class CopyCatComputer implements ComputerEnvironment, ExtendedComputerHan
 
     @Override
     public void transferFiles(FileContents[] files) {
-        computer.queueEvent(TransferredFiles.EVENT, new Object[]{
-            new TransferredFiles(
-                Arrays.stream(files)
-                    .map(x -> new TransferredFile(x.getName(), new ArrayByteChannel(new Int8Array(x.getContents()).copyToJavaArray())))
-                    .toList(),
-                () -> {
-                }),
-        });
+        record("transferFiles", RecordedInput.of(files));
+        wake();
+
+        // Files are read directly from the dropped file's buffer when needed, rather than copied into Java up front.
+        // The TransferredFiles callback runs as soon as the program calls getFiles(), before it has read anything, so
+        // each channel instead releases the buffer once its own handle is closed.
+        var transferred = Arrays.stream(files)
+            .map(x -> new TransferredFile(x.getName(), new TransferChannel(new Int8Array(x.getContents()))))
+            .toList();
+
+        events.add(TransferredFiles.EVENT, new Object[]{
+            new TransferredFiles(transferred, () -> {
+            }),
+        }, Main.eventQueueLimit);
     }
 
     @Override
@@ -0,0 +1,145 @@
+package cc.tweaked.copycat;
+
+import cc.tweaked.copycat.js.ExtendedComputerDisplay;
+import cc.tweaked.copycat.js.FileSystemEntry;
+import cc.tweaked.copycat.js.JsFileAttributes;
+import dan200.computercraft.api.filesystem.FileAttributes;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of file system entries and their metadata, so that repeated lookups (such as resolving programs on
+ * the shell's path) do not need to call into Javascript.
+ * <p>
+ * Entries must be invalidated whenever they are changed. The mount does this for its own changes, while changes made
+ * on the Javascript side (for instance, by the editor) are reported through
+ * {@link cc.tweaked.copycat.js.ExtendedComputerHandle#filesChanged(String)}.
+ */
+final class EntryCache {
+    private static final int CAPACITY = 256;
+
+    /**
+     * A sentinel for paths which do not exist.
+     */
+    private static final Entry MISSING = new Entry(null, false);
+
+    private final ExtendedComputerDisplay computer;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    EntryCache(ExtendedComputerDisplay computer) {
+        this.computer = computer;
+    }
+
+    /**
+     * Get the entry at the given path.
+     *
+     * @param path The path to look up.
+     * @return The cached entry, or {@code null} if it does not exist.
+     */
+    @Nullable
+    Entry get(@Nonnull String path) {
+        Entry entry = entries.get(path);
+        if (entry == null) {
+            FileSystemEntry jsEntry = computer.getEntry(path);
+            entry = jsEntry == null ? MISSING : new Entry(jsEntry, jsEntry.isDirectory());
+            entries.put(path, entry);
+
+            if (entries.size() > CAPACITY) {
+                Iterator<String> eldest = entries.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        return entry == MISSING ? null : entry;
+    }
+
+    /**
+     * Invalidate a single path, without affecting its parent or children. This should be used when only an entry's
+     * contents have changed.
+     *
+     * @param path The path to invalidate.
+     */
+    void invalidateEntry(@Nonnull String path) {
+        entries.remove(path);
+    }
+
+    /**
+     * Invalidate a path, any of its children and its parent.
+     *
+     * @param path The path to invalidate.
+     */
+    void invalidate(@Nonnull String path) {
+        if (path.isEmpty()) {
+            entries.clear();
+            return;
+        }
+
+        entries.remove(path);
+        var prefix = path + "/";
+        entries.keySet().removeIf(x -> x.startsWith(prefix));
+
+        int index = path.lastIndexOf('/');
+        entries.remove(index < 0 ? "" : path.substring(0, index));
+    }
+
+    /**
+     * Invalidate a path, and every one of its ancestors. This should be used when creating a path may also create its
+     * parent directories.
+     *
+     * @param path The path to invalidate.
+     */
+    void invalidateAncestors(@Nonnull String path) {
+        invalidate(path);
+        for (int index = path.lastIndexOf('/'); index >= 0; index = path.lastIndexOf('/', index - 1)) {
+            entries.remove(path.substring(0, index));
+        }
+        entries.remove("");
+    }
+
+    static final class Entry {
+        private final @Nullable FileSystemEntry entry;
+        private final boolean directory;
+
+        private @Nullable FileAttributes attributes;
+        private @Nullable String[] children;
+
+        private Entry(@Nullable FileSystemEntry entry, boolean directory) {
+            this.entry = entry;
+            this.directory = directory;
+        }
+
+        @Nonnull
+        FileSystemEntry entry() {
+            assert entry != null;
+            return entry;
+        }
+
+        boolean isDirectory() {
+            return directory;
+        }
+
+        @Nonnull
+        FileAttributes getAttributes() {
+            var attributes = this.attributes;
+            if (attributes != null) return attributes;
+
+            JsFileAttributes attr = entry().getAttributes();
+            return this.attributes = new FileAttributes(
+                attr.getDirectory(), (long) attr.getSize(),
+                FileTime.fromMillis((long) attr.getCreation()), FileTime.fromMillis((long) attr.getModification())
+            );
+        }
+
+        @Nonnull
+        String[] getChildren() {
+            var children = this.children;
+            return children != null ? children : (this.children = entry().getChildren());
+        }
+    }
+}
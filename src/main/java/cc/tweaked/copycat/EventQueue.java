@@ -0,0 +1,95 @@
+package cc.tweaked.copycat;
+
+import dan200.computercraft.core.apis.transfer.TransferredFiles;
+import dan200.computercraft.core.computer.Computer;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Events received from the page which are waiting to be queued on the computer. These are delivered at the start of
+ * each tick.
+ * <p>
+ * Dragging the mouse produces many events in quick succession, which Lua programs then need to drain from their event
+ * queue. Instead, if a drag event is immediately followed by another drag with the same button, we replace the pending
+ * event rather than queuing another. Other events (such as repeats of a held key) each represent real input, and so
+ * are always queued.
+ */
+final class EventQueue {
+    /**
+     * Events which are queued even if the queue is full. Dropping these would leave the computer in an inconsistent
+     * state, such as a key or mouse button which is never released.
+     */
+    private static final Set<String> ALWAYS_QUEUE = Set.of(
+        "key_up", "mouse_up", "paste", "terminate", "term_resize", TransferredFiles.EVENT
+    );
+    private final ArrayDeque<Event> events = new ArrayDeque<>();
+
+    private long queued;
+    private long coalesced;
+    private long dropped;
+
+    private record Event(String name, @Nullable Object[] args) {
+    }
+
+    /**
+     * Add an event to this queue.
+     *
+     * @param name  The name of the event.
+     * @param args  The event's arguments.
+     * @param limit The maximum number of events which can be waiting in this queue. Any additional events are dropped,
+     *              unless they are in {@link #ALWAYS_QUEUE}.
+     */
+    void add(String name, @Nullable Object[] args, int limit) {
+        var last = events.peekLast();
+        if (last != null && canCoalesce(last, name, args)) {
+            events.pollLast();
+            events.addLast(new Event(name, args));
+            coalesced++;
+            return;
+        }
+
+        if (events.size() >= limit && !ALWAYS_QUEUE.contains(name)) {
+            dropped++;
+            return;
+        }
+
+        events.addLast(new Event(name, args));
+        queued++;
+    }
+
+    /**
+     * Queue every pending event on the computer.
+     *
+     * @param computer The computer to queue events on.
+     */
+    void drain(Computer computer) {
+        Event event;
+        while ((event = events.pollFirst()) != null) computer.queueEvent(event.name(), event.args());
+    }
+
+    long getQueued() {
+        return queued;
+    }
+
+    long getCoalesced() {
+        return coalesced;
+    }
+
+    long getDropped() {
+        return dropped;
+    }
+
+    private static boolean canCoalesce(Event previous, String name, @Nullable Object[] args) {
+        if (!previous.name().equals(name) || previous.args() == null || args == null) return false;
+
+        return switch (name) {
+            // Dragging with the same button: only the latest position matters.
+            case "mouse_drag", "monitor_drag" -> previous.args().length >= 1 && args.length >= 1
+                && Objects.equals(previous.args()[0], args[0]);
+            default -> false;
+        };
+    }
+}
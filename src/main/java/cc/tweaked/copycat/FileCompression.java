@@ -0,0 +1,54 @@
+package cc.tweaked.copycat;
+
+import cc.tweaked.copycat.js.MoreJavascriptConv;
+import com.jcraft.jzlib.Deflater;
+import com.jcraft.jzlib.DeflaterOutputStream;
+import com.jcraft.jzlib.JZlib;
+import org.teavm.jso.typedarrays.Int8Array;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Compresses files before they are saved. This is registered with {@link cc.tweaked.copycat.js.Callbacks#setCompressor}
+ * and called from the Javascript persistence layer.
+ * <p>
+ * Files are compressed as raw deflate streams (without a zlib header), which are decompressed on the Javascript side
+ * (see {@code files/inflate.ts}).
+ */
+public final class FileCompression {
+    private FileCompression() {
+    }
+
+    /**
+     * Compress a file's contents.
+     *
+     * @param contents The contents to compress.
+     * @return The compressed contents. This may be larger than the original if the contents are incompressible, in
+     * which case the caller should store them uncompressed instead.
+     */
+    @Nonnull
+    public static Int8Array compress(@Nonnull Int8Array contents) {
+        return MoreJavascriptConv.ofByteArray(compress(MoreJavascriptConv.toByteArray(contents)));
+    }
+
+    @Nonnull
+    private static byte[] compress(@Nonnull byte[] contents) {
+        var output = new ByteArrayOutputStream(contents.length / 2);
+        try {
+            var deflater = new Deflater(JZlib.Z_DEFAULT_COMPRESSION, true);
+            try (var stream = new DeflaterOutputStream(output, deflater)) {
+                stream.write(contents);
+            } finally {
+                deflater.end();
+            }
+        } catch (IOException e) {
+            // This can only happen if the deflater is misconfigured, as we're writing to memory.
+            throw new UncheckedIOException(e);
+        }
+
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,320 @@
+package cc.tweaked.copycat;
+
+import cc.tweaked.web.Main;
+import dan200.computercraft.api.lua.ILuaAPI;
+import dan200.computercraft.api.lua.LuaFunction;
+import dan200.computercraft.api.lua.MethodResult;
+import dan200.computercraft.core.lua.CobaltLuaMachine;
+import dan200.computercraft.core.lua.ILuaMachine;
+import dan200.computercraft.core.lua.MachineEnvironment;
+import dan200.computercraft.core.lua.MachineException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Observes the Lua code running on a computer, for the {@link LuaProfiler} and {@link MemoryTracker}.
+ * <p>
+ * Cobalt does not let us inspect a running machine from outside, so this is done from inside the VM instead. We run a
+ * small agent before the bios (see {@link #createMachine(MachineEnvironment, InputStream)}), which installs a count
+ * hook on every coroutine. This hook takes profiler samples and walks the Lua heap, reporting back to this API.
+ * <p>
+ * While neither the profiler nor the memory limit is active, the hook only runs every {@code 1000000} instructions,
+ * and just checks whether either has been switched on. This means the profiler can be started on a computer which is
+ * already running.
+ * <p>
+ * The agent also wraps {@code debug.sethook}, and hides its own functions from {@code debug.getupvalue} and friends, so
+ * the computer's code cannot get hold of the original (unhooked) functions. Hooks set by the computer's own code take
+ * priority over the profiler, but are refused while the memory limit is enabled.
+ */
+public final class LuaAgent implements ILuaAPI {
+    /**
+     * The agent which hooks into the computer's coroutines. This is joined into a single line, so that line numbers
+     * in the bios are unchanged.
+     * <p>
+     * While active, the hook checks whether the profiler has been started or stopped every {@code 64} times it runs.
+     * Otherwise, it checks every time it runs.
+     */
+    private static final String AGENT = """
+        do
+          local api, globals = copycat_agent, _G
+          local getinfo, getlocal, getupvalue, getmetatable = debug.getinfo, debug.getlocal, debug.getupvalue, debug.getmetatable
+          local setupvalue, upvalueid, upvaluejoin = debug.setupvalue, debug.upvalueid, debug.upvaluejoin
+          local sethook, gethook = debug.sethook, debug.gethook
+          local create, wrap, status, running = coroutine.create, coroutine.wrap, coroutine.status, coroutine.running
+          local concat, floor = table.concat, math.floor
+          local type, next, pcall, error, len = type, next, pcall, error, rawlen or function(t) return #t end
+          copycat_agent = nil
+
+          local threads = setmetatable({}, { __mode = "k" })
+          local main = running()
+          if main then threads[main] = true end
+
+          local idle_interval = 1000000
+          local interval, profile_interval, memory_interval, memory_due, polls = idle_interval, 0, 0, 0, 0
+          local hidden, foreign = setmetatable({}, { __mode = "k" }), setmetatable({}, { __mode = "k" })
+          local function hide(fn) hidden[fn] = true return fn end
+          local seen, pending, pending_n, iter_table, iter_key, total
+
+          local function sample()
+            local frames, depth = {}, 0
+            for level = 3, 34 do
+              local info = getinfo(level, "Sn")
+              if not info then break end
+              depth = depth + 1
+              frames[depth] = ((info.name or info.what) .. " (" .. info.short_src .. ":" .. info.linedefined .. ")"):gsub(";", ":")
+            end
+
+            for i = 1, floor(depth / 2) do frames[i], frames[depth - i + 1] = frames[depth - i + 1], frames[i] end
+            api.sample(concat(frames, ";"))
+          end
+
+          local function visit(value)
+            local kind = type(value)
+            if kind == "string" then
+              if not seen[value] then seen[value] = true total = total + 24 + #value end
+            elseif kind == "table" or kind == "function" or kind == "thread" or kind == "userdata" then
+              if not seen[value] then seen[value] = true pending_n = pending_n + 1 pending[pending_n] = value end
+            end
+          end
+
+          local function begin_walk()
+            seen, pending, pending_n, iter_table, iter_key, total = setmetatable({}, { __mode = "k" }), {}, 0, nil, nil, 0
+            seen[seen], seen[pending], seen[threads] = true, true, true
+            visit(globals)
+            for thread in pairs(threads) do visit(thread) end
+          end
+
+          local function visit_thread(thread)
+            for level = 1, 64 do
+              local info = getinfo(thread, level, "f")
+              if not info then break end
+              visit(info.func)
+              for i = 1, 255 do
+                local name, value = getlocal(thread, level, i)
+                if name == nil then break end
+                visit(value)
+              end
+            end
+          end
+
+          local function step(budget)
+            while budget > 0 do
+              budget = budget - 1
+              if iter_table then
+                local ok, key, value = pcall(next, iter_table, iter_key)
+                if ok and key ~= nil then
+                  iter_key = key
+                  total = total + 16
+                  visit(key) visit(value)
+                else
+                  iter_table = nil
+                end
+              elseif pending_n > 0 then
+                local value = pending[pending_n]
+                pending[pending_n], pending_n = nil, pending_n - 1
+                local kind = type(value)
+                if kind == "table" then
+                  total = total + 56 + 16 * len(value)
+                  visit(getmetatable(value))
+                  iter_table, iter_key = value, nil
+                elseif kind == "function" then
+                  total = total + 40
+                  for i = 1, 255 do
+                    local name, up = getupvalue(value, i)
+                    if name == nil then break end
+                    total = total + 8
+                    visit(up)
+                  end
+                elseif kind == "thread" then
+                  total = total + 1024
+                  if status(value) ~= "dead" then pcall(visit_thread, value) end
+                else
+                  total = total + 40
+                  visit(getmetatable(value))
+                end
+              else
+                return true
+              end
+            end
+            return false
+          end
+
+          local update
+
+          local function hook()
+            if profile_interval == 0 and memory_interval == 0 then
+              update()
+              if profile_interval == 0 and memory_interval == 0 then return end
+            else
+              polls = polls + 1
+              if polls >= 64 then
+                polls = 0
+                update()
+              end
+            end
+
+            if profile_interval > 0 then sample() end
+            if memory_interval > 0 then
+              memory_due = memory_due - interval
+              if memory_due <= 0 then
+                memory_due = memory_interval
+                if not seen then begin_walk() end
+                local finished = step(250)
+                local over = api.memory(total, finished)
+                if finished or over then begin_walk() end
+                if over then error("Out of memory", 0) end
+              end
+            end
+          end
+          hide(hook)
+
+          local function install(thread)
+            if status(thread) == "dead" then return end
+            local current = gethook(thread)
+            if current == nil or current == hook then sethook(thread, hook, "", interval) end
+          end
+
+          update = function()
+            local new_profile, new_memory = api.poll()
+            if new_profile == profile_interval and new_memory == memory_interval then return end
+            profile_interval, memory_interval = new_profile, new_memory
+            interval = profile_interval > 0 and profile_interval or memory_interval > 0 and memory_interval or idle_interval
+            if memory_interval == 0 then seen, pending, iter_table, iter_key = nil, nil, nil, nil end
+            for thread in pairs(threads) do install(thread) end
+          end
+
+          update()
+          if main then install(main) end
+
+          coroutine.create = hide(function(fn)
+            local co = create(fn)
+            threads[co] = true
+            install(co)
+            return co
+          end)
+          coroutine.wrap = hide(function(fn)
+            return wrap(hide(function(...)
+              local co = running()
+              threads[co] = true
+              install(co)
+              return fn(...)
+            end))
+          end)
+
+          debug.sethook = hide(function(...)
+            local thread, fn = ...
+            if type(thread) ~= "thread" then thread, fn = running(), thread end
+            if fn ~= nil and fn ~= hook then
+              if memory_interval > 0 then error("Cannot set a debug hook while the memory limit is enabled", 2) end
+              foreign[thread] = true
+              sethook(...)
+            else
+              foreign[thread] = nil
+              sethook(thread)
+              install(thread)
+            end
+
+            local count = 0
+            for other in pairs(foreign) do
+              if status(other) ~= "dead" then count = count + 1 end
+            end
+            api.hooks(count)
+          end)
+
+          debug.getupvalue = hide(function(fn, i)
+            if hidden[fn] then return nil end
+            return getupvalue(fn, i)
+          end)
+          debug.setupvalue = hide(function(fn, i, value)
+            if hidden[fn] then return nil end
+            return setupvalue(fn, i, value)
+          end)
+          if upvalueid then
+            debug.upvalueid = hide(function(fn, i)
+              if hidden[fn] then error("Cannot access the upvalues of this function", 2) end
+              return upvalueid(fn, i)
+            end)
+          end
+          if upvaluejoin then
+            debug.upvaluejoin = hide(function(fn1, i1, fn2, i2)
+              if hidden[fn1] or hidden[fn2] then error("Cannot access the upvalues of this function", 2) end
+              return upvaluejoin(fn1, i1, fn2, i2)
+            end)
+          end
+        end
+        """.replace('\n', ' ');
+
+    private final LuaProfiler profiler = new LuaProfiler();
+    private final MemoryTracker memory = new MemoryTracker();
+    private int programHooks;
+
+    /**
+     * Create a Lua machine which runs the agent before the bios.
+     *
+     * @param environment The environment to create the machine with.
+     * @param bios        The bios to run.
+     * @return The newly created machine.
+     * @throws MachineException If the machine could not be created.
+     * @throws IOException      If the bios could not be read.
+     * @see ILuaMachine.Factory
+     */
+    public static ILuaMachine createMachine(MachineEnvironment environment, InputStream bios) throws MachineException, IOException {
+        var agent = new ByteArrayInputStream(AGENT.getBytes(StandardCharsets.UTF_8));
+        return new CobaltLuaMachine(environment, new SequenceInputStream(agent, bios));
+    }
+
+    @Override
+    public String[] getNames() {
+        return new String[]{"copycat_agent"};
+    }
+
+    public LuaProfiler getProfiler() {
+        return profiler;
+    }
+
+    MemoryTracker getMemory() {
+        return memory;
+    }
+
+    /**
+     * Determine whether the computer's own code has set a debug hook on any running coroutine. The profiler cannot see
+     * code running on these coroutines.
+     *
+     * @return Whether any coroutines have their own debug hook.
+     */
+    boolean hasProgramHooks() {
+        return programHooks > 0;
+    }
+
+    /**
+     * Reset any state about the computer's code once it has been shut down.
+     */
+    void reset() {
+        memory.reset();
+        programHooks = 0;
+    }
+
+    @LuaFunction
+    public final MethodResult poll() {
+        return MethodResult.of(profiler.getInterval(), Main.computerMemoryLimit > 0 ? MemoryTracker.INTERVAL : 0);
+    }
+
+    @LuaFunction
+    public final void sample(String stack) {
+        profiler.sample(stack);
+    }
+
+    @LuaFunction
+    public final boolean memory(long size, boolean finished) {
+        return memory.report(size, finished);
+    }
+
+    @LuaFunction
+    public final void hooks(int count) {
+        programHooks = count;
+    }
+}
@@ -0,0 +1,81 @@
+package cc.tweaked.copycat;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A sampling profiler for the Lua code running on a computer.
+ * <p>
+ * Samples are taken by {@link LuaAgent}, which installs a count hook on every coroutine while the profiler is running.
+ * Every {@link #getInterval()} instructions, the hook takes a sample of the current stack and sends it to
+ * {@link #sample(String)}.
+ * <p>
+ * The cost of profiling is bounded by the minimum sampling interval, the depth of each sample, and the number of
+ * distinct stacks we record.
+ */
+public final class LuaProfiler {
+    /**
+     * The minimum number of instructions between each sample.
+     */
+    public static final int MIN_INTERVAL = 1000;
+
+    /**
+     * The maximum number of distinct stacks to record. Any further stacks are recorded as {@link #OTHER}.
+     */
+    private static final int MAX_STACKS = 1024;
+
+    private static final String OTHER = "[other]";
+
+    private boolean running;
+    private int interval;
+    private final Map<String, Long> stacks = new TreeMap<>();
+
+    /**
+     * Start profiling, discarding any previously recorded samples.
+     *
+     * @param interval The number of instructions between each sample. This is clamped to {@link #MIN_INTERVAL}.
+     */
+    public void start(int interval) {
+        running = true;
+        this.interval = Math.max(MIN_INTERVAL, interval);
+        stacks.clear();
+    }
+
+    /**
+     * Stop profiling.
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Get the number of instructions between each sample.
+     *
+     * @return The sampling interval, or {@code 0} if the profiler is not running.
+     */
+    int getInterval() {
+        return running ? interval : 0;
+    }
+
+    /**
+     * Record a single sample.
+     *
+     * @param stack The sampled stack, with frames separated by {@code ;}, outermost first.
+     */
+    void sample(String stack) {
+        if (!running) return;
+        stacks.merge(stacks.size() >= MAX_STACKS && !stacks.containsKey(stack) ? OTHER : stack, 1L, Long::sum);
+    }
+
+    /**
+     * Get every stack recorded so far, in the "folded" format used by flame graph tools. Each line contains a stack
+     * (with frames separated by {@code ;}, outermost first) and the number of times it was sampled.
+     *
+     * @return The recorded stacks.
+     */
+    public String getProfile() {
+        var out = new StringBuilder();
+        for (var entry : stacks.entrySet()) out.append(entry.getKey()).append(' ').append(entry.getValue()).append('\n');
+        return out.toString();
+    }
+}
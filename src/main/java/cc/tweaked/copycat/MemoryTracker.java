@@ -0,0 +1,86 @@
+package cc.tweaked.copycat;
+
+import cc.tweaked.web.Main;
+
+/**
+ * Tracks how much memory the Lua code running on a computer is using, and enforces {@link Main#computerMemoryLimit}.
+ * <p>
+ * Cobalt allocates objects on the shared Javascript heap, so there is no way to measure a single computer's memory
+ * directly. Instead, {@link LuaAgent} periodically walks every object reachable from the computer's globals and
+ * coroutines, and estimates their size. This is an approximation: shared strings are counted once per computer, and
+ * objects only reachable from Java (such as open files) are not counted at all.
+ * <p>
+ * When a walk finds the computer is over the limit, the running program is stopped with an "Out of memory" error. If
+ * the computer is still over the limit on the next walk (for instance, the error was caught), it is shut down.
+ * <p>
+ * This is a safeguard against runaway programs rather than a security boundary. The walk runs in a debug hook, which
+ * only runs between Lua instructions, so a single instruction which allocates a lot of memory (such as a large
+ * {@code string.rep}) is only noticed once it has finished. {@link LuaAgent} stops programs from replacing or
+ * removing the hook while the limit is enabled, but as it runs inside the VM, this relies on the agent's own functions
+ * staying out of the program's reach.
+ */
+final class MemoryTracker {
+    /**
+     * The number of instructions between each step of the walk.
+     */
+    static final int INTERVAL = 100_000;
+
+    private long usage;
+    private long peak;
+    private boolean overLimit;
+    private boolean shutdownRequested;
+
+    /**
+     * Record the result of a walk.
+     *
+     * @param size     The estimated size of every object visited.
+     * @param finished Whether the walk has finished. If not, {@code size} is only a lower bound, and so is only used
+     *                 to check whether the computer is over the limit.
+     * @return Whether the computer is over the limit, and so the running program should be stopped.
+     */
+    boolean report(long size, boolean finished) {
+        long limit = Main.computerMemoryLimit;
+        boolean over = limit > 0 && size > limit;
+        if (!finished && !over) return false;
+
+        usage = size;
+        peak = Math.max(peak, size);
+
+        if (!over) {
+            overLimit = false;
+            return false;
+        }
+
+        if (overLimit) shutdownRequested = true;
+        overLimit = true;
+        return true;
+    }
+
+    /**
+     * Reset the current usage once the computer has been shut down.
+     */
+    void reset() {
+        usage = 0;
+        overLimit = false;
+        shutdownRequested = false;
+    }
+
+    /**
+     * Determine whether the computer should be shut down, as it has stayed over the limit.
+     *
+     * @return Whether the computer should be shut down. This is only returned once per request.
+     */
+    boolean takeShutdownRequest() {
+        boolean requested = shutdownRequested;
+        shutdownRequested = false;
+        return requested;
+    }
+
+    long getUsage() {
+        return usage;
+    }
+
+    long getPeak() {
+        return peak;
+    }
+}
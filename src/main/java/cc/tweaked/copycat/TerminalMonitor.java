@@ -0,0 +1,165 @@
+package cc.tweaked.copycat;
+
+import cc.tweaked.copycat.js.ExtendedComputerDisplay;
+import cc.tweaked.copycat.js.MoreJavascriptConv;
+import dan200.computercraft.core.terminal.Palette;
+import dan200.computercraft.core.terminal.Terminal;
+import dan200.computercraft.core.terminal.TextBuffer;
+
+/**
+ * Keeps a copy of the terminal state last sent to the display, and packs any changes into a single frame for
+ * {@link ExtendedComputerDisplay#updateTerminalFrame}.
+ * <p>
+ * A frame has the following layout, with all integers being little-endian {@code int32}s:
+ * <ul>
+ *   <li>The terminal's width, height, cursor x and cursor y, then the cursor blink (one byte, 0 or 1) and cursor
+ *   colour (one byte).</li>
+ *   <li>The number of changed palette entries (one byte), followed by each entry's index, red, green and blue
+ *   components (one byte each).</li>
+ *   <li>The number of changed lines, followed by each line's index and its text, text colour and background colour
+ *   ({@code width} bytes each).</li>
+ * </ul>
+ * The frame buffer is reused across ticks, so no allocation is needed unless the terminal is resized.
+ */
+final class TerminalMonitor {
+    private static final int PALETTE_SIZE = 16;
+    private static final int HEADER_SIZE = 4 * 4 + 2 + 1 + PALETTE_SIZE * 4 + 4;
+
+    private final Terminal terminal;
+
+    private int width = -1;
+    private int height = -1;
+    private char[][] text = new char[0][];
+    private char[][] textColour = new char[0][];
+    private char[][] backgroundColour = new char[0][];
+    private final double[] palette = new double[PALETTE_SIZE * 3];
+
+    private byte[] frame = new byte[HEADER_SIZE];
+    private int length;
+
+    private boolean redraw = true;
+
+    TerminalMonitor(Terminal terminal) {
+        this.terminal = terminal;
+    }
+
+    /**
+     * Mark the whole terminal as dirty, forcing every line and palette entry to be sent on the next flush.
+     */
+    void redraw() {
+        redraw = true;
+    }
+
+    /**
+     * Send any changed parts of the terminal to the display.
+     *
+     * @param display The display to update.
+     */
+    void flush(ExtendedComputerDisplay display) {
+        int width = terminal.getWidth(), height = terminal.getHeight();
+        if (width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            text = new char[height][width];
+            textColour = new char[height][width];
+            backgroundColour = new char[height][width];
+            frame = new byte[HEADER_SIZE + height * (4 + width * 3)];
+            redraw = true;
+        }
+
+        boolean redraw = this.redraw;
+        length = 0;
+
+        writeInt(width);
+        writeInt(height);
+        writeInt(terminal.getCursorX());
+        writeInt(terminal.getCursorY());
+        writeByte(terminal.getCursorBlink() ? 1 : 0);
+        writeByte(terminal.getTextColour());
+
+        int paletteCountOffset = length++;
+        int paletteCount = 0;
+        Palette palette = terminal.getPalette();
+        for (int i = 0; i < PALETTE_SIZE; i++) {
+            double[] colours = palette.getColour(i);
+            int offset = i * 3;
+            if (!redraw && this.palette[offset] == colours[0] && this.palette[offset + 1] == colours[1] && this.palette[offset + 2] == colours[2]) {
+                continue;
+            }
+
+            this.palette[offset] = colours[0];
+            this.palette[offset + 1] = colours[1];
+            this.palette[offset + 2] = colours[2];
+
+            writeByte(15 - i);
+            writeByte((int) (colours[0] * 0xFF));
+            writeByte((int) (colours[1] * 0xFF));
+            writeByte((int) (colours[2] * 0xFF));
+            paletteCount++;
+        }
+        frame[paletteCountOffset] = (byte) paletteCount;
+
+        int lineCountOffset = length;
+        length += 4;
+        int lineCount = 0;
+        for (int i = 0; i < height; i++) {
+            // Use a non-short-circuiting or, as we need to update all three copies.
+            boolean changed = update(terminal.getLine(i), text[i])
+                | update(terminal.getTextColourLine(i), textColour[i])
+                | update(terminal.getBackgroundColourLine(i), backgroundColour[i]);
+            if (!changed && !redraw) continue;
+
+            writeInt(i);
+            writeLine(text[i]);
+            writeLine(textColour[i]);
+            writeLine(backgroundColour[i]);
+            lineCount++;
+        }
+        putInt(lineCountOffset, lineCount);
+
+        this.redraw = false;
+        display.updateTerminalFrame(MoreJavascriptConv.ofByteArray(frame), length);
+    }
+
+    private void writeByte(int value) {
+        frame[length++] = (byte) value;
+    }
+
+    private void writeInt(int value) {
+        putInt(length, value);
+        length += 4;
+    }
+
+    private void putInt(int offset, int value) {
+        frame[offset] = (byte) value;
+        frame[offset + 1] = (byte) (value >> 8);
+        frame[offset + 2] = (byte) (value >> 16);
+        frame[offset + 3] = (byte) (value >> 24);
+    }
+
+    private void writeLine(char[] line) {
+        byte[] frame = this.frame;
+        int length = this.length;
+        for (char c : line) frame[length++] = (byte) c;
+        this.length = length;
+    }
+
+    /**
+     * Copy a line of the terminal into our local copy.
+     *
+     * @param buffer The current line.
+     * @param last   The last line which was sent.
+     * @return Whether the line had changed.
+     */
+    private static boolean update(TextBuffer buffer, char[] last) {
+        boolean changed = false;
+        for (int i = 0; i < last.length; i++) {
+            char c = buffer.charAt(i);
+            if (c != last[i]) {
+                last[i] = c;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+}
@@ -0,0 +1,221 @@
+package cc.tweaked.copycat;
+
+import cc.tweaked.copycat.js.TickControl;
+import cc.tweaked.copycat.js.TickStats;
+import org.teavm.jso.JSBody;
+import org.teavm.jso.browser.Performance;
+import org.teavm.jso.browser.Window;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ticks every computer at a fixed rate, replacing a plain {@link Window#setInterval}.
+ * <p>
+ * Each wake-up runs any ticks which are due, catching up on ones which were missed (for instance, if the previous
+ * tick took too long, or the browser throttled our timer). If we fall too far behind, the remaining ticks are dropped,
+ * though they still count towards {@link #getTickCount()}, so the in-game clock stays in sync with the real one.
+ * <p>
+ * Computers share a fixed time budget within each tick. They are ticked in round-robin order, with computers which
+ * have been using more than their fair share of the budget going last. Once the budget is used up, any remaining
+ * computers are put off until the next tick (see {@link CopyCatComputer#tryDefer()}). This means one busy computer
+ * cannot hold up every other computer on the page. Hibernating computers (see
+ * {@link CopyCatComputer#isHibernating()}) are not ticked at all.
+ * <p>
+ * Terminal output is not sent as part of the tick, but instead on the next animation frame. This means we only draw
+ * at most once per frame, and not at all when the page is hidden. Some browsers do not support animation frames inside
+ * workers, in which case the terminal is sent at the end of each tick instead.
+ * <p>
+ * The scheduler can also be paused and stepped through manually (see {@link TickControl}), such as when replaying a
+ * recording of a computer's input.
+ */
+public final class TickScheduler implements TickControl {
+    /**
+     * The length of a single tick, in milliseconds.
+     */
+    private static final double TICK_LENGTH = 50;
+
+    /**
+     * The number of ticks in one second.
+     */
+    public static final int TICKS_PER_SECOND = (int) (1000 / TICK_LENGTH);
+
+    /**
+     * The maximum number of ticks we'll run in a single wake-up.
+     */
+    private static final int MAX_CATCH_UP = 5;
+
+    /**
+     * The time all computers can spend within a single tick, in milliseconds.
+     */
+    private static final double TICK_BUDGET = 35;
+
+    private final List<CopyCatComputer> computers = new ArrayList<>();
+    private final List<CopyCatComputer> toTick = new ArrayList<>();
+    private final List<CopyCatComputer> overrunning = new ArrayList<>();
+    private int startIndex;
+    private final boolean useAnimationFrames = hasAnimationFrames();
+
+    private double nextTick;
+    private boolean scheduled;
+    private boolean paused;
+    private boolean framePending;
+
+    private long ticks;
+    private long lateTicks;
+    private long droppedTicks;
+    private double lastTickTime;
+
+    /**
+     * Add a computer to this scheduler. It will be removed once it has been disposed of.
+     *
+     * @param computer The computer to add.
+     */
+    public void add(CopyCatComputer computer) {
+        computers.add(computer);
+    }
+
+    /**
+     * Start ticking computers.
+     */
+    public void start() {
+        nextTick = Performance.now() + TICK_LENGTH;
+        schedule();
+    }
+
+    /**
+     * Get the number of ticks which have elapsed since the scheduler was started.
+     *
+     * @return The number of elapsed ticks, including those which were dropped.
+     */
+    public long getTickCount() {
+        return ticks;
+    }
+
+    @Override
+    public void pause() {
+        paused = true;
+    }
+
+    @Override
+    public void resume() {
+        if (!paused) return;
+        paused = false;
+
+        // Start counting from now, even if a timeout from before the pause is still pending. Otherwise the time spent
+        // paused is counted as late or dropped ticks.
+        nextTick = Performance.now() + TICK_LENGTH;
+        if (!scheduled) schedule();
+    }
+
+    @Override
+    public double step() {
+        if (!paused) throw new IllegalStateException("Cannot step the scheduler while it is running");
+
+        double start = Performance.now();
+        tickComputers(false);
+        updateDisplays();
+        return lastTickTime = Performance.now() - start;
+    }
+
+    @Override
+    public double getTicks() {
+        return ticks;
+    }
+
+    @Override
+    public void setTicks(double ticks) {
+        if (!paused) throw new IllegalStateException("Cannot change the time while the scheduler is running");
+        this.ticks = (long) ticks;
+    }
+
+    /**
+     * Get a snapshot of this scheduler's timings.
+     *
+     * @return The current scheduler stats.
+     */
+    public TickStats getStats() {
+        return TickStats.create(ticks, lateTicks, droppedTicks, lastTickTime);
+    }
+
+    private void schedule() {
+        scheduled = true;
+        Window.setTimeout(this::run, (int) Math.max(0, Math.ceil(nextTick - Performance.now())));
+    }
+
+    private void run() {
+        scheduled = false;
+        if (paused) return;
+
+        double now = Performance.now();
+
+        int ran = 0;
+        while (nextTick <= now && ran < MAX_CATCH_UP) {
+            if (now - nextTick >= TICK_LENGTH) lateTicks++;
+
+            tickComputers(true);
+            ran++;
+            nextTick += TICK_LENGTH;
+
+            double end = Performance.now();
+            lastTickTime = end - now;
+            now = end;
+        }
+
+        if (nextTick <= now) {
+            // We're still behind, so skip the remaining ticks rather than trying to catch up forever.
+            long dropped = (long) ((now - nextTick) / TICK_LENGTH) + 1;
+            droppedTicks += dropped;
+            ticks += dropped;
+            nextTick += dropped * TICK_LENGTH;
+        }
+
+        if (ran > 0 && !framePending) {
+            if (useAnimationFrames) {
+                framePending = true;
+                Window.requestAnimationFrame(timestamp -> updateDisplays());
+            } else {
+                updateDisplays();
+            }
+        }
+
+        schedule();
+    }
+
+    private void tickComputers(boolean budgeted) {
+        ticks++;
+
+        int count = computers.size();
+        if (count == 0) return;
+
+        // Start from a different computer each tick, so no computer is always first (or last) in the queue.
+        startIndex = (startIndex + 1) % count;
+        double fairShare = TICK_BUDGET / count;
+        for (int i = 0; i < count; i++) {
+            var computer = computers.get((startIndex + i) % count);
+            if (computer.isIdle() || computer.isHibernating()) continue;
+            (computer.isOverrunning(fairShare) ? overrunning : toTick).add(computer);
+        }
+        toTick.addAll(overrunning);
+        overrunning.clear();
+
+        double start = Performance.now();
+        for (var computer : toTick) {
+            double tickStart = Performance.now();
+            if (budgeted && tickStart - start >= TICK_BUDGET && computer.tryDefer()) continue;
+
+            boolean removed = computer.tick();
+            computer.recordTickTime(Performance.now() - tickStart);
+            if (removed) computers.remove(computer);
+        }
+        toTick.clear();
+    }
+
+    private void updateDisplays() {
+        framePending = false;
+        for (var computer : computers) computer.updateDisplay();
+    }
+
+    @JSBody(script = "return typeof requestAnimationFrame === \"function\";")
+    private static native boolean hasAnimationFrames();
+}
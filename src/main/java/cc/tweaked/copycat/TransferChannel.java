@@ -0,0 +1,96 @@
+package cc.tweaked.copycat;
+
+import cc.tweaked.copycat.js.MoreJavascriptConv;
+import org.teavm.jso.typedarrays.Int8Array;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A read-only channel over a file which has been dropped onto the computer.
+ * <p>
+ * Rather than copying the whole file into Java up front, this reads directly from the underlying Javascript array,
+ * one chunk at a time. The array is only held onto until the file's handle is closed.
+ */
+final class TransferChannel implements SeekableByteChannel {
+    private static final int CHUNK_SIZE = 8192;
+
+    private @Nullable Int8Array contents;
+    private final int size;
+    private long position;
+
+    TransferChannel(@Nonnull Int8Array contents) {
+        this.contents = contents;
+        this.size = contents.getLength();
+    }
+
+    private Int8Array getContents() throws ClosedChannelException {
+        var contents = this.contents;
+        if (contents == null) throw new ClosedChannelException();
+        return contents;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        var contents = getContents();
+        if (position >= size) return -1;
+
+        int read = 0;
+        while (buffer.hasRemaining() && position < size) {
+            int start = (int) position;
+            int length = Math.min(Math.min(buffer.remaining(), size - start), CHUNK_SIZE);
+            buffer.put(MoreJavascriptConv.toByteArray(contents.subarray(start, start + length)));
+            position += length;
+            read += length;
+        }
+
+        return read;
+    }
+
+    @Override
+    public int write(ByteBuffer buffer) throws IOException {
+        getContents();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public long position() throws IOException {
+        getContents();
+        return position;
+    }
+
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        getContents();
+        if (newPosition < 0) throw new IllegalArgumentException("Cannot seek before the beginning of the stream");
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        getContents();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        getContents();
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return contents != null;
+    }
+
+    @Override
+    public void close() {
+        contents = null;
+    }
+}
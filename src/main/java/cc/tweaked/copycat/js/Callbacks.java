@@ -3,6 +3,7 @@ package cc.tweaked.copycat.js;
 import org.teavm.jso.JSBody;
 import org.teavm.jso.JSFunctor;
 import org.teavm.jso.JSObject;
+import org.teavm.jso.typedarrays.Int8Array;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -14,6 +15,12 @@ public class Callbacks {
         ExtendedComputerHandle addComputer(ExtendedComputerDisplay computer);
     }
 
+    @JSFunctor
+    @FunctionalInterface
+    public interface Compressor extends JSObject {
+        Int8Array compress(Int8Array contents);
+    }
+
     /**
      * Get the current callback instance
      *
@@ -22,6 +29,31 @@ public class Callbacks {
     @JSBody(params = {"setup"}, script = "return $javaCallbacks.setup(setup);")
     public static native void setup(Setup setup);
 
+    /**
+     * Register the function used to compress files before they are saved.
+     *
+     * @param compressor The compression function.
+     */
+    @JSBody(params = {"compressor"}, script = "$javaCallbacks.setCompressor(compressor);")
+    public static native void setCompressor(Compressor compressor);
+
+    /**
+     * Register the controller for the clock computers are ticked by.
+     *
+     * @param control The tick controller.
+     */
+    @JSBody(params = {"control"}, script = "$javaCallbacks.setTickControl(control);")
+    public static native void setTickControl(TickControl control);
+
+    /**
+     * Set the size limits of the cache used by the HTTP API.
+     *
+     * @param size     The maximum size of all cached responses, in bytes. 0 disables the cache.
+     * @param maxEntry The maximum size of a single cached response, in bytes.
+     */
+    @JSBody(params = {"size", "maxEntry"}, script = "$javaCallbacks.setHttpCacheLimits(size, maxEntry);")
+    public static native void setHttpCacheLimits(int size, int maxEntry);
+
     /**
      * Get or create a config group
      *
@@ -0,0 +1,43 @@
+package cc.tweaked.copycat.js;
+
+import org.teavm.jso.JSBody;
+import org.teavm.jso.JSObject;
+import org.teavm.jso.JSProperty;
+
+/**
+ * A snapshot of how much time has been spent ticking a single computer.
+ *
+ * @see cc.tweaked.copycat.TickScheduler
+ */
+public interface ComputerTime extends JSObject {
+    /**
+     * The total time spent ticking this computer, in milliseconds.
+     */
+    @JSProperty
+    double getTotalTime();
+
+    /**
+     * How long the most recent tick of this computer took, in milliseconds.
+     */
+    @JSProperty
+    double getLastTickTime();
+
+    /**
+     * A moving average of how long each tick of this computer takes, in milliseconds. This is used to decide whether a
+     * computer is using more than its share of each tick.
+     */
+    @JSProperty
+    double getAverageTickTime();
+
+    /**
+     * The number of times this computer's tick was put off, as other computers had used up the tick's time budget.
+     */
+    @JSProperty
+    double getDeferredTicks();
+
+    @JSBody(
+        params = {"totalTime", "lastTickTime", "averageTickTime", "deferredTicks"},
+        script = "return { totalTime: totalTime, lastTickTime: lastTickTime, averageTickTime: averageTickTime, deferredTicks: deferredTicks };"
+    )
+    static native ComputerTime create(double totalTime, double lastTickTime, double averageTickTime, double deferredTicks);
+}
@@ -0,0 +1,34 @@
+package cc.tweaked.copycat.js;
+
+import org.teavm.jso.JSBody;
+import org.teavm.jso.JSObject;
+import org.teavm.jso.JSProperty;
+
+/**
+ * A snapshot of how many events have been sent to a computer.
+ */
+public interface EventStats extends JSObject {
+    /**
+     * The number of events which were queued on the computer.
+     */
+    @JSProperty
+    double getQueued();
+
+    /**
+     * The number of events which replaced an equivalent event which was still waiting to be queued.
+     */
+    @JSProperty
+    double getCoalesced();
+
+    /**
+     * The number of events which were dropped, as too many events were waiting to be queued.
+     */
+    @JSProperty
+    double getDropped();
+
+    @JSBody(
+        params = {"queued", "coalesced", "dropped"},
+        script = "return { queued: queued, coalesced: coalesced, dropped: dropped };"
+    )
+    static native EventStats create(double queued, double coalesced, double dropped);
+}
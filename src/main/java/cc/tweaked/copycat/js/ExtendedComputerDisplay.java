@@ -3,6 +3,8 @@ package cc.tweaked.copycat.js;
 import cc.tweaked.web.js.ComputerDisplay;
 import org.teavm.jso.JSObject;
 import org.teavm.jso.JSProperty;
+import org.teavm.jso.core.JSBoolean;
+import org.teavm.jso.typedarrays.Int8Array;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -46,6 +48,32 @@ public interface ExtendedComputerDisplay extends ComputerDisplay {
      */
     void deleteEntry(@Nonnull String path);
 
+    /**
+     * Move a file system entry (and any children) to a new path, creating any parent directories. This does not copy
+     * the contents of any files.
+     *
+     * @param source The path to move from.
+     * @param dest   The path to move to. This must not exist.
+     * @return Whether the entry could be moved.
+     */
+    @Nonnull
+    Result<JSBoolean> moveEntry(@Nonnull String source, @Nonnull String dest);
+
+    /**
+     * Persist any changes made to the file system since the last commit. File system operations are buffered on the
+     * Javascript side, so this allows many changes made within one tick to be saved at once.
+     */
+    void commitFileSystem();
+
+    /**
+     * Update the terminal from a packed frame, and then flush it. This replaces the individual
+     * {@link #updateTerminal}, {@link #setTerminalLine}, {@link #setPaletteColour} and {@link #flushTerminal} calls.
+     *
+     * @param frame  The packed frame. This buffer is reused between calls, and so should not be retained.
+     * @param length The length of this frame. Any data after this point should be ignored.
+     */
+    void updateTerminalFrame(@Nonnull Int8Array frame, int length);
+
     /**
      * A naive Either type, instead of wrangling JS/Java exceptions.
      */
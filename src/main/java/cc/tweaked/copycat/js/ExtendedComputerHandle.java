@@ -1,6 +1,7 @@
 package cc.tweaked.copycat.js;
 
 import cc.tweaked.web.js.ComputerHandle;
+import org.teavm.jso.JSObject;
 
 import javax.annotation.Nullable;
 
@@ -12,6 +13,24 @@ public interface ExtendedComputerHandle extends ComputerHandle {
      */
     void setLabel(@Nullable String label);
 
+    /**
+     * Send several events to the computer at once. This is equivalent to calling {@link #event(String, JSObject[])}
+     * for each event, but only needs a single call into the emulator.
+     * <p>
+     * Events are delivered at the start of the next tick. Consecutive events which are equivalent (such as dragging the
+     * mouse with the same button) are merged, and events are dropped once too many are waiting to be delivered.
+     *
+     * @param events The events to queue.
+     */
+    void events(QueuedEvent[] events);
+
+    /**
+     * Get how many events have been sent to this computer, and how many of those were merged or dropped.
+     *
+     * @return The current event stats.
+     */
+    EventStats getEventStats();
+
     /**
      * Set the width and height of the computer. If not given, this will be synced with the
      *
@@ -19,4 +38,101 @@ public interface ExtendedComputerHandle extends ComputerHandle {
      * @param height The computer's height.
      */
     void resize(int width, int height);
+
+    /**
+     * Resend the whole terminal on the next tick, rather than just the parts which have changed. This should be used
+     * if the display has lost its copy of the terminal.
+     */
+    void redrawTerminal();
+
+    /**
+     * Notify the computer that files have been changed outside of the computer (for instance, by the editor), and so
+     * any cached information about them should be discarded.
+     *
+     * @param path The path which was changed. Its children and parent are also invalidated.
+     */
+    void filesChanged(String path);
+
+    /**
+     * Get a snapshot of how long ticks are taking, and how many have been run late or dropped. This is shared across
+     * all computers.
+     *
+     * @return The current tick stats.
+     */
+    TickStats getTickStats();
+
+    /**
+     * Set whether this computer is visible to the user. Hidden computers may be paused (see the "Hibernation" config
+     * group), and are resumed when they become visible again.
+     *
+     * @param visible Whether this computer is visible.
+     */
+    void setVisible(boolean visible);
+
+    /**
+     * Get how much time has been spent ticking this computer.
+     *
+     * @return The current time spent on this computer.
+     */
+    ComputerTime getComputerTime();
+
+    /**
+     * Start recording every input sent to this computer (such as events, resizing the terminal or attaching
+     * peripherals), along with the tick it was received on. Any previous recording is discarded.
+     * <p>
+     * Calls to {@link #filesChanged(String)} are recorded, but the changed files are not: the caller is responsible
+     * for saving their contents alongside the recording.
+     */
+    void startRecording();
+
+    /**
+     * Stop recording this computer's input.
+     *
+     * @return The recorded input, or an empty array if we were not recording.
+     */
+    RecordedInput[] stopRecording();
+
+    /**
+     * Get how much memory this computer's Lua code is using.
+     *
+     * @return The current memory stats.
+     */
+    MemoryStats getMemoryStats();
+
+    /**
+     * Start profiling the Lua code running on this computer, discarding any previous profile. This takes effect
+     * within a few million Lua instructions, including on a computer which is already running.
+     * <p>
+     * Coroutines where the computer's own code has set a debug hook (with {@code debug.sethook}) are not profiled. A
+     * warning is logged if this is the case when the profiler is started.
+     *
+     * @param interval The number of Lua instructions between each sample. Lower values give a more detailed profile,
+     *                 but slow the computer down more. Values below 1000 are raised to 1000.
+     */
+    void startProfiler(int interval);
+
+    /**
+     * Stop profiling this computer.
+     *
+     * @return The recorded profile, as returned by {@link #getProfile()}.
+     */
+    String stopProfiler();
+
+    /**
+     * Get the profile recorded since the profiler was last started. This is in the "folded" format used by flame graph
+     * tools: each line contains a stack (with frames separated by {@code ;}, outermost first), followed by how many
+     * times it was sampled.
+     *
+     * @return The recorded profile.
+     */
+    String getProfile();
+
+    /**
+     * Get the metrics recorded for this computer. Metrics are only recorded while the "Collect metrics" option is
+     * enabled.
+     *
+     * @param reset Whether to clear the recorded metrics after taking this snapshot.
+     * @return A snapshot of every metric which has been observed.
+     */
+    MetricSnapshot[] getMetricsSnapshot(boolean reset);
 }
@@ -35,6 +35,19 @@ public interface FileSystemEntry extends JSObject {
     @Nonnull
     byte[] getContents();
 
+    /**
+     * Read part of the contents of this filesystem entry. This avoids copying the whole file when only part of it is
+     * needed.
+     *
+     * @param offset The offset to start reading from.
+     * @param length The maximum number of bytes to read.
+     * @return The requested contents. This may be shorter than {@code length} if the end of the file is reached.
+     * @throws RuntimeException If this is not a file
+     */
+    @JSByRef
+    @Nonnull
+    byte[] readContents(int offset, int length);
+
     /**
      * Set the contents of this filesystem entry
      *
@@ -45,6 +58,18 @@ public interface FileSystemEntry extends JSObject {
     @Nonnull
     ExtendedComputerDisplay.Result<JSBoolean> setContents(@Nonnull Int8Array contents);
 
+    /**
+     * Replace the contents of this filesystem entry from a given offset. Any existing contents before this offset are
+     * kept, while everything after it is discarded.
+     *
+     * @param offset   The offset to write at. This must be less than or equal to the current size of the file.
+     * @param contents The new contents from this offset onwards.
+     * @return Whether this file could be successfully written
+     * @throws RuntimeException If this is not a file
+     */
+    @Nonnull
+    ExtendedComputerDisplay.Result<JSBoolean> writeContents(int offset, @Nonnull Int8Array contents);
+
     /**
      * Get the attrribut
      *
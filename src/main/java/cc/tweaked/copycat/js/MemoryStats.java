@@ -0,0 +1,35 @@
+package cc.tweaked.copycat.js;
+
+import org.teavm.jso.JSBody;
+import org.teavm.jso.JSObject;
+import org.teavm.jso.JSProperty;
+
+/**
+ * A snapshot of how much memory a computer's Lua code is using. These are estimates, and are only measured while the
+ * computer memory limit is enabled.
+ */
+public interface MemoryStats extends JSObject {
+    /**
+     * The memory currently in use, in bytes.
+     */
+    @JSProperty
+    double getUsage();
+
+    /**
+     * The most memory this computer has used, in bytes.
+     */
+    @JSProperty
+    double getPeak();
+
+    /**
+     * The most memory this computer may use, in bytes, or {@code 0} if there is no limit.
+     */
+    @JSProperty
+    double getLimit();
+
+    @JSBody(
+        params = {"usage", "peak", "limit"},
+        script = "return { usage: usage, peak: peak, limit: limit };"
+    )
+    static native MemoryStats create(double usage, double peak, double limit);
+}
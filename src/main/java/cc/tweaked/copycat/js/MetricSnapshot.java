@@ -0,0 +1,54 @@
+package cc.tweaked.copycat.js;
+
+import org.teavm.jso.JSBody;
+import org.teavm.jso.JSObject;
+import org.teavm.jso.JSProperty;
+
+/**
+ * A snapshot of a single metric for a computer.
+ *
+ * @see dan200.computercraft.core.metrics.Metric
+ */
+public interface MetricSnapshot extends JSObject {
+    /**
+     * The name of this metric.
+     */
+    @JSProperty
+    String getName();
+
+    /**
+     * The kind of this metric, either {@code "counter"} or {@code "event"}.
+     */
+    @JSProperty
+    String getKind();
+
+    /**
+     * The number of times this metric was observed.
+     */
+    @JSProperty
+    double getCount();
+
+    /**
+     * The sum of all values observed. This is always 0 for counters.
+     */
+    @JSProperty
+    double getTotal();
+
+    /**
+     * The largest value observed. This is always 0 for counters.
+     */
+    @JSProperty
+    double getMax();
+
+    /**
+     * A histogram of observed values, where entry {@code i} is the number of values in {@code [2^(i-1), 2^i)}.
+     */
+    @JSProperty
+    double[] getBuckets();
+
+    @JSBody(
+        params = {"name", "kind", "count", "total", "max", "buckets"},
+        script = "return { name: name, kind: kind, count: count, total: total, max: max, buckets: buckets };"
+    )
+    static native MetricSnapshot create(String name, String kind, double count, double total, double max, double[] buckets);
+}
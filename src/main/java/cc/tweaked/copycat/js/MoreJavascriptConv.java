@@ -17,4 +17,14 @@ public class MoreJavascriptConv extends JavascriptConv {
      */
     @JSBody(params = "x", script = "return x;")
     public static native Int8Array ofByteArray(@JSByRef byte[] contents);
+
+    /**
+     * Wrap an {@link Int8Array} as a {@code byte[]}, without copying it where possible.
+     *
+     * @param contents The array to wrap.
+     * @return The wrapped contents.
+     */
+    @JSBody(params = "x", script = "return x;")
+    @JSByRef
+    public static native byte[] toByteArray(Int8Array contents);
 }
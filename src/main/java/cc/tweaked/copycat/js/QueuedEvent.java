@@ -0,0 +1,24 @@
+package cc.tweaked.copycat.js;
+
+import org.teavm.jso.JSObject;
+import org.teavm.jso.JSProperty;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single event sent to {@link ExtendedComputerHandle#events(QueuedEvent[])}.
+ */
+public interface QueuedEvent extends JSObject {
+    /**
+     * The name of this event.
+     */
+    @JSProperty
+    String getName();
+
+    /**
+     * The arguments to this event.
+     */
+    @JSProperty
+    @Nullable
+    JSObject[] getArgs();
+}
@@ -0,0 +1,51 @@
+package cc.tweaked.copycat.js;
+
+import org.teavm.jso.JSBody;
+import org.teavm.jso.JSObject;
+import org.teavm.jso.JSProperty;
+
+import javax.annotation.Nullable;
+
+/**
+ * A single call to a computer, recorded by {@link ExtendedComputerHandle#startRecording()}.
+ * <p>
+ * Recordings can be replayed by calling the same method on another computer, with the same arguments, on the same
+ * tick.
+ */
+public interface RecordedInput extends JSObject {
+    /**
+     * The tick this call was made on, relative to when the recording was started.
+     */
+    @JSProperty
+    double getTick();
+
+    /**
+     * The name of the {@link ExtendedComputerHandle} method which was called.
+     */
+    @JSProperty
+    String getMethod();
+
+    /**
+     * The arguments passed to the method.
+     */
+    @JSProperty
+    JSObject[] getArgs();
+
+    @JSBody(
+        params = {"tick", "method", "args"},
+        script = "return { tick: tick, method: method, args: args };"
+    )
+    static native RecordedInput create(double tick, String method, JSObject[] args);
+
+    @JSBody(params = "value", script = "return value;")
+    static native JSObject of(@Nullable String value);
+
+    @JSBody(params = "value", script = "return value;")
+    static native JSObject of(int value);
+
+    @JSBody(params = "value", script = "return value;")
+    static native JSObject of(boolean value);
+
+    @JSBody(params = "values", script = "return values;")
+    static native JSObject of(@Nullable JSObject[] values);
+}
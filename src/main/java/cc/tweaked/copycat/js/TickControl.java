@@ -0,0 +1,45 @@
+package cc.tweaked.copycat.js;
+
+import org.teavm.jso.JSObject;
+
+/**
+ * Controls the clock which every computer is ticked by. This allows running computers deterministically (for instance,
+ * to replay a recording), by stepping through ticks manually rather than on a timer.
+ *
+ * @see cc.tweaked.copycat.TickScheduler
+ */
+public interface TickControl extends JSObject {
+    /**
+     * Stop ticking computers on a timer. Computers are then only ticked by {@link #step()}.
+     */
+    void pause();
+
+    /**
+     * Start ticking computers on a timer again.
+     */
+    void resume();
+
+    /**
+     * Run a single tick. Unlike normal ticks, every computer is ticked, regardless of how long the tick takes, and the
+     * terminal is sent at the end of the tick.
+     *
+     * @return How long the tick took, in milliseconds.
+     * @throws IllegalStateException If the clock has not been paused.
+     */
+    double step();
+
+    /**
+     * Get the current tick.
+     *
+     * @return The number of ticks which have elapsed.
+     */
+    double getTicks();
+
+    /**
+     * Set the current tick. This changes the time of day seen by computers.
+     *
+     * @param ticks The new tick.
+     * @throws IllegalStateException If the clock has not been paused.
+     */
+    void setTicks(double ticks);
+}
@@ -0,0 +1,42 @@
+package cc.tweaked.copycat.js;
+
+import org.teavm.jso.JSBody;
+import org.teavm.jso.JSObject;
+import org.teavm.jso.JSProperty;
+
+/**
+ * A snapshot of the tick scheduler's timings.
+ *
+ * @see cc.tweaked.copycat.TickScheduler
+ */
+public interface TickStats extends JSObject {
+    /**
+     * The number of ticks which have elapsed, including those which were dropped.
+     */
+    @JSProperty
+    double getTicks();
+
+    /**
+     * The number of ticks which ran at least one tick later than they were scheduled.
+     */
+    @JSProperty
+    double getLateTicks();
+
+    /**
+     * The number of ticks which were skipped entirely, as we had fallen too far behind.
+     */
+    @JSProperty
+    double getDroppedTicks();
+
+    /**
+     * How long the most recent tick took, in milliseconds.
+     */
+    @JSProperty
+    double getLastTickTime();
+
+    @JSBody(
+        params = {"ticks", "lateTicks", "droppedTicks", "lastTickTime"},
+        script = "return { ticks: ticks, lateTicks: lateTicks, droppedTicks: droppedTicks, lastTickTime: lastTickTime };"
+    )
+    static native TickStats create(double ticks, double lateTicks, double droppedTicks, double lastTickTime);
+}
@@ -1,46 +1,54 @@
 package cc.tweaked.web;
 
 import cc.tweaked.copycat.CopyCatComputer;
+import cc.tweaked.copycat.FileCompression;
+import cc.tweaked.copycat.LuaAgent;
+import cc.tweaked.copycat.TickScheduler;
 import cc.tweaked.copycat.js.Callbacks;
 import cc.tweaked.copycat.js.ConfigGroup;
 import dan200.computercraft.core.ComputerContext;
 import dan200.computercraft.core.CoreConfig;
-import org.teavm.jso.browser.Window;
-
-import java.util.ArrayList;
-import java.util.List;
 
 public class Main {
     public static String CORS_PROXY = "https://copy-cat-cors.vercel.app/?{}";
+    public static int httpCacheSize = 8 * 1024 * 1024;
+    public static int httpCacheMaxEntry = 1024 * 1024;
     public static int computerTermWidth = 51;
     public static int computerTermHeight = 19;
+    public static int computerSpaceLimit = 1000 * 1000;
+    public static int computerMemoryLimit = 0;
+    public static boolean metricsEnabled = false;
+    public static int eventQueueLimit = 256;
+    public static boolean hibernateBackground = false;
+    public static int hibernateIdleTimeout = 0;
+    public static boolean hibernateUnload = false;
 
-    private static long ticks;
+    private static final TickScheduler scheduler = new TickScheduler();
 
     public static void main(String[] args) {
         setupConfig();
 
-        var context = ComputerContext.builder(EmulatorEnvironment.INSTANCE).build();
-        List<CopyCatComputer> computers = new ArrayList<>();
+        var context = ComputerContext.builder(EmulatorEnvironment.INSTANCE)
+            .luaFactory(LuaAgent::createMachine)
+            .build();
 
+        Callbacks.setCompressor(FileCompression::compress);
+        Callbacks.setTickControl(scheduler);
         Callbacks.setup(access -> {
             var wrapper = new CopyCatComputer(context, access);
-            computers.add(wrapper);
+            scheduler.add(wrapper);
             return wrapper;
         });
 
-        Window.setInterval(() -> {
-            ticks++;
-            var iterator = computers.iterator();
-            while (iterator.hasNext()) {
-                var wrapper = iterator.next();
-                if (wrapper.tick()) iterator.remove();
-            }
-        }, 50);
+        scheduler.start();
     }
 
     public static long getTicks() {
-        return ticks;
+        return scheduler.getTickCount();
+    }
+
+    public static TickScheduler getScheduler() {
+        return scheduler;
     }
 
     private static void setupConfig() {
@@ -51,6 +59,30 @@ public class Main {
             x -> CoreConfig.maximumFilesOpen = x
         );
 
+        general.addInt("computer_space_limit", "Computer space limit", computerSpaceLimit, 0, Integer.MAX_VALUE,
+            "The disk space limit for computers, in bytes. Changes will apply when the computer is next started. Set " +
+                "to 0 for unlimited.",
+            x -> computerSpaceLimit = x
+        );
+
+        general.addInt("computer_memory_limit", "Computer memory limit", computerMemoryLimit, 0, Integer.MAX_VALUE,
+            "The approximate amount of memory each computer's Lua code may use, in bytes. Programs which use more " +
+                "than this are stopped with an \"Out of memory\" error, and the computer is shut down if it stays " +
+                "over the limit. This is a best-effort safeguard, not a hard limit: memory is estimated by " +
+                "periodically walking the Lua heap, so memory only held by Java objects (such as open files) is not " +
+                "counted, and a single large allocation (such as a huge string.rep) is only noticed after it has " +
+                "been made. While enabled, programs cannot set their own debug hooks with debug.sethook. Changes " +
+                "will apply when the computer is next started. Set to 0 for unlimited.",
+            x -> computerMemoryLimit = x
+        );
+
+        general.addInt("event_queue_limit", "Event queue limit", eventQueueLimit, 1, Integer.MAX_VALUE,
+            "The maximum number of events which can be waiting to be delivered to a computer. Any further events " +
+                "(for instance, from dragging the mouse while the computer is busy) are dropped, except for " +
+                "releasing keys or mouse buttons, pasting and resizing.",
+            x -> eventQueueLimit = x
+        );
+
         general.addString("default_computer_settings", "Default computer settings", CoreConfig.defaultComputerSettings,
             "A comma separated list of default system settings to set on new computers. Example: " +
                 "\"shell.autocomplete=false,lua.autocomplete=false,edit.autocomplete=false\" will disable all autocompletion",
@@ -98,5 +130,54 @@ public class Main {
                 "any site, but does involve sending all headers to another site first. Set to empty or \"{}\" to disable.",
             x -> CORS_PROXY = x
         );
+
+        http.addInt("http.cache_size", "Cache size", httpCacheSize, 0, Integer.MAX_VALUE,
+            "The maximum size of all cached HTTP responses, in bytes. The least recently used responses are removed " +
+                "first once this is exceeded. Set to 0 to disable the cache. The cache is only used by the " +
+                "emulator's Javascript runtime, which is used when running outside a browser, or when the browser " +
+                "does not support WebAssembly GC. It has no effect under the WebAssembly runtime.",
+            x -> {
+                httpCacheSize = x;
+                Callbacks.setHttpCacheLimits(httpCacheSize, httpCacheMaxEntry);
+            }
+        );
+
+        http.addInt("http.cache_max_entry", "Maximum cached response size", httpCacheMaxEntry, 0, Integer.MAX_VALUE,
+            "The largest HTTP response which will be cached, in bytes.",
+            x -> {
+                httpCacheMaxEntry = x;
+                Callbacks.setHttpCacheLimits(httpCacheSize, httpCacheMaxEntry);
+            }
+        );
+
+        ConfigGroup hibernation = Callbacks.config("Hibernation", "Pause computers which are not being used");
+
+        hibernation.addBoolean("hibernate.background", "Pause in the background", hibernateBackground,
+            "Stop running computers while the page is hidden (for instance, in a background tab). They are resumed " +
+                "when the page is shown again, or when they receive input. Paused computers do not run timers or " +
+                "receive HTTP responses, so programs which wait on these will stall until resumed.",
+            x -> hibernateBackground = x
+        );
+
+        hibernation.addInt("hibernate.idle_timeout", "Idle timeout", hibernateIdleTimeout, 0, Integer.MAX_VALUE,
+            "Stop running computers which have not received any input or drawn anything to the screen for this many " +
+                "seconds. They are resumed when they receive input. Paused computers do not run timers or receive HTTP " +
+                "responses. Set to 0 to disable.",
+            x -> hibernateIdleTimeout = x
+        );
+
+        hibernation.addBoolean("hibernate.unload", "Shut down paused computers", hibernateUnload,
+            "Shut down computers when they are paused, freeing the memory they use. They are turned back on when " +
+                "resumed, but any running programs will be restarted.",
+            x -> hibernateUnload = x
+        );
+
+        ConfigGroup metrics = Callbacks.config("Metrics", "Diagnose which programs are slowing down the emulator");
+
+        metrics.addBoolean("metrics.enabled", "Collect metrics", metricsEnabled,
+            "Record how long each computer spends running Lua, and how many HTTP requests and file system operations " +
+                "it makes. This has a small performance cost, so should only be enabled when needed.",
+            x -> metricsEnabled = x
+        );
     }
 }
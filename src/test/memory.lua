@@ -0,0 +1,40 @@
+-- Checks that the memory limit stops programs which use too much memory, including ones which try to get around it.
+-- The test runner sets computer_memory_limit to 8MiB.
+
+-- Allocate 64KiB every few thousand instructions, so that we run out of memory within a few steps of the heap walk.
+local function allocate()
+  local chunks = {}
+  for i = 1, 4096 do
+    chunks[i] = ("x"):rep(65536) .. i
+    for _ = 1, 1000 do end
+  end
+end
+
+local function expect_out_of_memory(name, ok, err)
+  if ok then error(name .. ": allocated 256MiB without running out of memory", 0) end
+  if type(err) ~= "string" or not err:find("Out of memory", 1, true) then
+    error(name .. ": unexpected error " .. tostring(err), 0)
+  end
+
+  -- Give the heap walk time to finish, so it sees we're back under the limit. Otherwise running out of memory again
+  -- counts as staying over the limit, and the computer is shut down.
+  for _ = 1, 1e7 do end
+end
+
+-- The limit stops a program which uses too much memory.
+expect_out_of_memory("main", pcall(allocate))
+
+-- And inside a new coroutine.
+expect_out_of_memory("coroutine", coroutine.resume(coroutine.create(allocate)))
+
+-- Programs cannot replace the hook which enforces the limit.
+if pcall(debug.sethook, function() end, "", 1000) then error("Could replace the memory limit's hook", 0) end
+
+-- Removing the hook is allowed, but it is put straight back.
+debug.sethook()
+expect_out_of_memory("after removing the hook", pcall(allocate))
+
+-- Programs cannot get hold of the original, unhooked, functions.
+if debug.getupvalue(coroutine.create, 1) ~= nil then error("Could read the upvalues of coroutine.create", 0) end
+if debug.getupvalue(debug.sethook, 1) ~= nil then error("Could read the upvalues of debug.sethook", 0) end
+expect_out_of_memory("coroutine.wrap", pcall(coroutine.wrap(allocate)))
@@ -0,0 +1,29 @@
+-- Receives a file dropped onto the computer by the test runner, and checks it can be read in full after getFiles()
+-- has been called.
+
+-- Tell the runner we're ready for the file.
+fs.open("/.headless/ready", "w").close()
+
+local _, transferred = os.pullEvent("file_transfer")
+local files = transferred.getFiles()
+if #files ~= 1 then error(("Expected 1 file, got %d"):format(#files), 0) end
+
+local file = files[1]
+if file.getName() ~= "transfer.txt" then error("Unexpected file " .. file.getName(), 0) end
+
+-- Read in small pieces, so that we cross the boundaries between the chunks read from the file's buffer.
+local parts = {}
+while true do
+  local part = file.read(1000)
+  if not part then break end
+  parts[#parts + 1] = part
+end
+file.close()
+
+local contents, expected = table.concat(parts), ("0123456789abcdef"):rep(2048)
+if contents ~= expected then
+  error(("Read %d bytes, expected %d"):format(#contents, #expected), 0)
+end
+
+-- Reading from a closed file should fail, rather than returning stale data.
+if pcall(file.read) then error("Could read from a closed file", 0) end
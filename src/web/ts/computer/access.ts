@@ -1,172 +1,57 @@
-import { type ComputerActionable, type KeyCode, type LuaValue, Semaphore, TerminalData, lwjgl3Code } from "@squid-dev/cc-web-term";
+import { type ComputerActionable, type KeyCode, type LuaValue, type Semaphore, type TerminalData, lwjgl3Code } from "@squid-dev/cc-web-term";
 import {
   type ComputerDisplay,
   type ComputerHandle,
   type ConfigFactory,
-  type FileAttributes,
-  type FileSystemEntry as IFileSystemEntry,
   type PeripheralKind,
+  type QueuedEvent,
   type Result,
   type Side,
   start
 } from "../java";
-import type { BasicAttributes, ComputerPersistance } from "./persist";
+import { FileSystem, type FileSystemEntry } from "./filesystem";
+import { readTerminalFrame } from "./frame";
+import { BatchedPersistence, type ComputerPersistance, type FileChange, RecordingPersistence, type StoredEntry } from "./persist";
+import type { Recording } from "./recording";
+import { startWorker } from "./remote";
 
-const colours = "0123456789abcdef";
-
-export const splitName = (file: string): [string, string] => {
-  const lastIndex = file.lastIndexOf("/");
-  if (lastIndex < 0) return ["", file];
-  return [file.substring(0, lastIndex), file.substring(lastIndex + 1)];
-};
-
-export const joinName = (parent: string, child: string): string => parent === "" ? child : `${parent}/${child}`;
-
-const empty = new Int8Array(0);
-const decoder = new TextDecoder("UTF-8", { fatal: false });
-const encoder = new TextEncoder();
-
-export class FileSystemEntry implements IFileSystemEntry {
-  private readonly persistance: ComputerPersistance;
-  private readonly path: string;
-  private children: Array<string> | null;
-  private contents: Int8Array | null;
-  private exists: boolean = true;
-  private semaphore?: Semaphore;
-  private attributes: BasicAttributes;
-
-  public constructor(persistance: ComputerPersistance, path: string, children: Array<string> | null, contents: Int8Array | null, attributes: BasicAttributes | null) {
-    this.persistance = persistance;
-    this.path = path;
-    this.children = children;
-    this.contents = contents;
-    this.attributes = attributes ?? { modification: 0, creation: 0 };
-  }
-
-  public static create(persistance: ComputerPersistance, path: string, directory: boolean): FileSystemEntry {
-    const now = Date.now();
-    const instance = new FileSystemEntry(persistance, path, directory ? [] : null, directory ? null : empty, { creation: now, modification: now });
-    instance.save();
-    return instance;
-  }
-
-  public isDirectory(): boolean {
-    return this.children != null;
-  }
-
-  public getChildren(): Array<string> {
-    if (this.children === null) throw Error("Not a directory");
-    return this.children;
-  }
-
-  public setChildren(children: Array<string>): void {
-    if (this.children === null) throw Error("Not a directory");
-    this.children = children;
-    if (this.semaphore) this.semaphore.signal();
-    this.save();
-  }
-
-  public getContents(): Int8Array {
-    if (this.contents !== null) return this.contents;
-    if (this.children !== null) throw Error("Not a file");
-    return this.contents = this.persistance.getContents(this.path);
-  }
-
-  public getStringContents(): string {
-    return decoder.decode(this.getContents());
-  }
+export { FileSystemEntry, joinName, splitName } from "./filesystem";
 
-  public setContents(contents: Int8Array | ArrayBuffer | string): Result<true> {
-    if (this.children !== null) throw Error("Not a file");
-    if (!this.exists) return { error: "File has been deleted", value: null };
-    this.attributes.modification = Date.now();
-
-    if (typeof contents === "string") {
-      const encoded = encoder.encode(contents);
-      this.contents = new Int8Array(encoded);
-    } else {
-      this.contents = contents instanceof Int8Array ? contents : new Int8Array(contents);
-    }
-    this.save();
-    if (this.semaphore) this.semaphore.signal();
-    return { value: true };
-  }
-
-  public delete(): void {
-    this.exists = false;
-    if (this.children === null) {
-      this.persistance.removeContents(this.path);
-    } else {
-      this.persistance.removeChildren(this.path);
-    }
-    this.persistance.removeAttributes(this.path);
-    if (this.semaphore) this.semaphore.signal();
-  }
-
-  private save(): void {
-    if (this.children !== null) this.persistance.setChildren(this.path, this.children);
-    if (this.contents !== null) this.persistance.setContents(this.path, this.contents);
-    this.persistance.setAttributes(this.path, this.attributes);
-  }
-
-  public getSemaphore(): Semaphore {
-    return this.semaphore ?? (this.semaphore = new Semaphore());
-  }
-
-  public doesExist(): boolean {
-    return this.exists;
-  }
-
-  public getAttributes(): FileAttributes {
-    const directory = this.isDirectory();
-    return { directory, size: directory ? 0 : this.getContents().length, ...this.attributes };
-  }
-}
+const colours = "0123456789abcdef";
 
 export class ComputerAccess implements ComputerDisplay, ComputerActionable {
-  private readonly persistance: ComputerPersistance;
+  private readonly persistance: BatchedPersistence;
 
   private readonly terminal: TerminalData;
   private readonly semaphore: Semaphore;
   private readonly stateChanged: (label: string | null, on: boolean) => void;
 
   private label: string | null;
-  private readonly filesystem: Map<string, FileSystemEntry> = new Map<string, FileSystemEntry>();
+  private readonly recorder: RecordingPersistence;
+  private readonly filesystem: FileSystem;
 
   private computer?: ComputerHandle;
+  private pendingEvents: Array<QueuedEvent> = [];
   private callbacks: Array<(cb: ComputerHandle) => void> = [];
   private removed: boolean = false;
+  private recording: Recording | null = null;
 
   public constructor(
     persistance: ComputerPersistance, terminal: TerminalData, semaphore: Semaphore,
     stateChange: (label: string | null, on: boolean) => void,
   ) {
-    this.persistance = persistance;
+    this.persistance = new BatchedPersistence(persistance);
+    window.addEventListener("pagehide", this.commitFileSystem);
 
     this.terminal = terminal;
     this.semaphore = semaphore;
     this.stateChanged = stateChange;
 
-    this.label = persistance.getLabel();
-
-    const queue = [""];
-    while (true) {
-      const path = queue.pop();
-      if (path === undefined) break;
-
-      const children = persistance.getChildren(path);
-      const attributes = persistance.getAttributes(path);
-      if (children !== null) {
-        this.filesystem.set(path, new FileSystemEntry(persistance, path, children, null, attributes));
-        for (const child of children) queue.push(joinName(path, child));
-      } else if (path === "") {
-        // Create a new entry
-        this.filesystem.set("", new FileSystemEntry(persistance, "", [], null, attributes));
-      } else {
-        // Assume it's a file
-        this.filesystem.set(path, new FileSystemEntry(persistance, path, null, null, attributes));
-      }
-    }
+    this.label = this.persistance.getLabel();
+
+    // Changes are only recorded once the computer is started inside a worker, so they can be sent across to it.
+    this.recorder = new RecordingPersistence(this.persistance, false);
+    this.filesystem = new FileSystem(this.recorder);
   }
 
   public getLabel(): string | null {
@@ -186,7 +71,12 @@ export class ComputerAccess implements ComputerDisplay, ComputerActionable {
     width: number, height: number,
     x: number, y: number, blink: boolean, cursorColour: number,
   ): void {
-    this.terminal.resize(width, height);
+    if (this.terminal.sizeX !== width || this.terminal.sizeY !== height) {
+      // Resizing resets every line, but frames only contain the lines which changed. Ask for the whole terminal
+      // again, so lines missing from this frame are not left blank.
+      this.terminal.resize(width, height);
+      this.computer?.redrawTerminal();
+    }
     this.terminal.cursorX = x;
     this.terminal.cursorY = y;
     this.terminal.cursorBlink = blink;
@@ -208,74 +98,89 @@ export class ComputerAccess implements ComputerDisplay, ComputerActionable {
     this.semaphore.signal();
   }
 
+  public updateTerminalFrame(frame: Int8Array, length: number): void {
+    readTerminalFrame(frame, length, {
+      setCursor: (width, height, x, y, blink, cursorColour) => this.updateTerminal(width, height, x, y, blink, cursorColour),
+      setPaletteColour: (colour, r, g, b) => {
+        this.terminal.palette[colours.charAt(colour)] = `rgb(${r},${g},${b})`;
+      },
+      setLine: (line, text, fore, back) => this.setTerminalLine(line, text, fore, back),
+    });
+
+    this.flushTerminal();
+  }
+
+  public commitFileSystem = (): void => {
+    this.persistance.commit();
+  };
+
   public getEntry(path: string): FileSystemEntry | null {
-    return this.filesystem.get(path) ?? null;
+    return this.filesystem.getEntry(path);
   }
 
   public createDirectory(path: string): Result<FileSystemEntry> {
-    const entry = this.filesystem.get(path);
-    if (!entry) {
-      const [parentName, fileName] = splitName(path);
-      const parent = this.createDirectory(parentName);
-      if (parent.value === null) return parent;
-
-      const file = FileSystemEntry.create(this.persistance, path, true);
-      parent.value.setChildren([...parent.value.getChildren(), fileName]);
-      this.filesystem.set(path, file);
-      return { value: file };
-    } else if (entry.isDirectory()) {
-      return { value: entry };
-    } else {
-      return { error: `/${path}: File exists`, value: null };
-    }
+    return this.filesystem.createDirectory(path);
   }
 
   public createFile(path: string): Result<FileSystemEntry> {
-    const entry = this.filesystem.get(path);
-    if (!entry) {
-      const [parentName, fileName] = splitName(path);
-      const parent = this.filesystem.get(parentName);
-      if (!parent?.isDirectory()) return { error: `/${path}: Access denied`, value: null };
-
-      const file = FileSystemEntry.create(this.persistance, path, false);
-      parent.setChildren([...parent.getChildren(), fileName]);
-      this.filesystem.set(path, file);
-      return { value: file };
-    } else if (entry.isDirectory()) {
-      return { error: `/${path}: Cannot write to directory`, value: null };
-    } else {
-      return { value: entry };
-    }
+    return this.filesystem.createFile(path);
   }
 
   public deleteEntry(path: string): void {
-    const pathEntry = this.filesystem.get(path);
-    if (!pathEntry) return pathEntry;
-
-    // Remove from the parent
-    const [parentName, fileName] = splitName(path);
-    const parent = this.filesystem.get(parentName)!;
-    parent.setChildren(parent.getChildren().filter(x => x !== fileName));
-
-    // And delete any children
-    const queue = [path];
-    while (true) {
-      const file = queue.pop();
-      if (file === undefined) break;
-
-      const entry = this.filesystem.get(file);
-      if (!entry) continue;
-
-      this.filesystem.delete(file);
-      entry.delete();
-
-      if (!entry.isDirectory()) continue;
-      for (const child of entry.getChildren()) queue.push(joinName(file, child));
+    this.filesystem.deleteEntry(path);
+  }
+
+  public moveEntry(source: string, dest: string): Result<true> {
+    return this.filesystem.moveEntry(source, dest);
+  }
+
+  /**
+   * Get a copy of the whole file system, and start recording any further changes made to it. This is used to set up
+   * the copy of the file system inside a worker.
+   *
+   * @return Every entry in the file system.
+   */
+  public snapshotFileSystem(): Array<StoredEntry> {
+    this.recorder.recording = true;
+    this.recorder.takeChanges();
+    return this.filesystem.snapshot();
+  }
+
+  /**
+   * Get any changes made to the file system since the last call, so they can be sent to the worker.
+   *
+   * @return The changes made to the file system.
+   */
+  public takeFileChanges(): Array<FileChange> {
+    return this.recorder.takeChanges();
+  }
+
+  /**
+   * Apply changes made by the computer inside a worker, and then save them.
+   *
+   * @param changes The changes made by the computer.
+   */
+  public applyFileChanges(changes: Array<FileChange>): void {
+    // Don't record these changes, as otherwise they'd be sent straight back to the worker.
+    this.recorder.recording = false;
+    try {
+      this.filesystem.applyChanges(changes);
+    } finally {
+      this.recorder.recording = true;
     }
+
+    this.commitFileSystem();
   }
 
-  public start(config: ConfigFactory, options?: { width?: number, height?: number, label?: string }): void {
-    start(this, config)
+  /**
+   * Start this computer.
+   *
+   * @param config  The factory for the computer's config groups.
+   * @param options Additional options for the computer. If `worker` is set, the computer is run inside a Web
+   *                Worker rather than on the page's main thread.
+   */
+  public start(config: ConfigFactory, options?: { width?: number, height?: number, label?: string, worker?: boolean }): void {
+    (options?.worker ? startWorker(this, config) : start(this, config))
       .then(computer => {
         this.computer = computer;
         if (this.removed) computer.dispose();
@@ -286,15 +191,47 @@ export class ComputerAccess implements ComputerDisplay, ComputerActionable {
         if (typeof this.label === "string") computer.setLabel(this.label);
         else if (typeof label === "string") computer.setLabel(label);
 
+        if (!this.removed) {
+          document.addEventListener("visibilitychange", this.visibilityChanged);
+          this.visibilityChanged();
+        }
+
         for (const callback of this.callbacks) callback(computer);
       })
       .catch(e => console.error("Cannot start computer", e));
   }
 
+  /**
+   * Notify the computer that a file has been changed outside of the computer, such as by the editor. This must be
+   * called after any changes not made by the computer itself.
+   *
+   * @param path The path which was changed.
+   */
+  public filesChanged(path: string): void {
+    // The computer only records that the files changed, so keep a copy of them to apply when replaying.
+    if (this.recording) this.recording.fileChanges.push({ path, entries: this.filesystem.snapshot(path) });
+    this.computer?.filesChanged(path);
+  }
+
+  private visibilityChanged = (): void => {
+    this.computer?.setVisible(document.visibilityState === "visible");
+  };
+
   public queueEvent(event: string, args: Array<LuaValue>): void {
-    this.computer?.event(event, args);
+    if (!this.computer) return;
+
+    // Input events often arrive in bursts (such as when dragging the mouse), so send them to the computer in a single
+    // batch once the current task has finished.
+    this.pendingEvents.push({ name: event, args });
+    if (this.pendingEvents.length === 1) Promise.resolve().then(this.flushEvents).catch(e => console.error(e));
   }
 
+  private flushEvents = (): void => {
+    const events = this.pendingEvents;
+    this.pendingEvents = [];
+    if (events.length > 0) this.computer?.events(events);
+  };
+
   public keyDown(key: KeyCode, repeat: boolean): void {
     const code = lwjgl3Code(key);
     if (code !== undefined) this.queueEvent("key", [code, repeat]);
@@ -320,6 +257,50 @@ export class ComputerAccess implements ComputerDisplay, ComputerActionable {
   public dispose(): void {
     this.removed = true;
     this.computer?.dispose();
+
+    window.removeEventListener("pagehide", this.commitFileSystem);
+    document.removeEventListener("visibilitychange", this.visibilityChanged);
+    this.commitFileSystem();
+  }
+
+  /**
+   * Start recording the input sent to this computer. The computer is rebooted, so that the recording can be replayed
+   * from a known state.
+   *
+   * @throws If the computer has not started yet, or is running inside a worker.
+   */
+  public startRecording(): void {
+    if (!this.computer) throw new Error("Computer has not started yet");
+
+    // Send any queued events first, so they are not part of the recording.
+    this.flushEvents();
+
+    this.computer.startRecording();
+    this.computer.reboot();
+    this.recording = {
+      version: 1,
+      startTick: this.computer.getTickStats().ticks,
+      width: this.terminal.sizeX,
+      height: this.terminal.sizeY,
+      label: this.label,
+      files: this.filesystem.snapshot(),
+      inputs: [],
+      fileChanges: [],
+    };
+  }
+
+  /**
+   * Stop recording the input sent to this computer.
+   *
+   * @return The finished recording, or `null` if we were not recording.
+   */
+  public stopRecording(): Recording | null {
+    const recording = this.recording;
+    if (!recording || !this.computer) return null;
+
+    this.flushEvents();
+    this.recording = null;
+    return { ...recording, inputs: this.computer.stopRecording() };
   }
 
   public transferFiles(files: Array<{ name: string, contents: ArrayBuffer }>): void {
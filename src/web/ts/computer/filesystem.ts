@@ -0,0 +1,413 @@
+import type { FileAttributes, FileSystemEntry as IFileSystemEntry, Result } from "../java";
+import type { BasicAttributes, ComputerPersistance, FileChange, StoredEntry } from "./persist";
+
+export const splitName = (file: string): [string, string] => {
+  const lastIndex = file.lastIndexOf("/");
+  if (lastIndex < 0) return ["", file];
+  return [file.substring(0, lastIndex), file.substring(lastIndex + 1)];
+};
+
+export const joinName = (parent: string, child: string): string => parent === "" ? child : `${parent}/${child}`;
+
+const empty = new Int8Array(0);
+const decoder = new TextDecoder("UTF-8", { fatal: false });
+const encoder = new TextEncoder();
+
+/**
+ * A set of listeners which are notified when a file system entry changes.
+ *
+ * This behaves the same as cc-web-term's `Semaphore`, but is defined here so that the file system can be loaded inside
+ * a worker without also loading the terminal.
+ */
+export class Semaphore {
+  private readonly listeners: Set<() => void> = new Set();
+
+  public attach(listener: () => void): void {
+    this.listeners.add(listener);
+  }
+
+  public detach(listener: () => void): void {
+    this.listeners.delete(listener);
+  }
+
+  public signal(): void {
+    for (const listener of this.listeners) listener();
+  }
+}
+
+export class FileSystemEntry implements IFileSystemEntry {
+  private readonly persistance: ComputerPersistance;
+  private path: string;
+  private children: Array<string> | null;
+  private contents: Int8Array | null;
+  /**
+   * A buffer owned by this entry, which {@link contents} is a prefix of. Appending to the file writes into the spare
+   * capacity of this buffer, rather than copying the whole file each time.
+   */
+  private buffer: Int8Array | null = null;
+  private exists: boolean = true;
+  private semaphore?: Semaphore;
+  private attributes: BasicAttributes;
+
+  public constructor(persistance: ComputerPersistance, path: string, children: Array<string> | null, contents: Int8Array | null, attributes: BasicAttributes | null) {
+    this.persistance = persistance;
+    this.path = path;
+    this.children = children;
+    this.contents = contents;
+    this.attributes = attributes ?? { modification: 0, creation: 0 };
+  }
+
+  public static create(persistance: ComputerPersistance, path: string, directory: boolean): FileSystemEntry {
+    const now = Date.now();
+    const instance = new FileSystemEntry(persistance, path, directory ? [] : null, directory ? null : empty, { creation: now, modification: now });
+    instance.save();
+    return instance;
+  }
+
+  public isDirectory(): boolean {
+    return this.children != null;
+  }
+
+  public getChildren(): Array<string> {
+    if (this.children === null) throw Error("Not a directory");
+    return this.children;
+  }
+
+  public setChildren(children: Array<string>): void {
+    if (this.children === null) throw Error("Not a directory");
+    this.children = children;
+    if (this.semaphore) this.semaphore.signal();
+    this.save();
+  }
+
+  public getContents(): Int8Array {
+    if (this.contents !== null) return this.contents;
+    if (this.children !== null) throw Error("Not a file");
+    return this.contents = this.persistance.getContents(this.path);
+  }
+
+  public readContents(offset: number, length: number): Int8Array {
+    return this.getContents().subarray(offset, offset + length);
+  }
+
+  public getStringContents(): string {
+    return decoder.decode(this.getContents());
+  }
+
+  public setContents(contents: Int8Array | ArrayBuffer | string): Result<true> {
+    if (this.children !== null) throw Error("Not a file");
+    if (!this.exists) return { error: "File has been deleted", value: null };
+    this.attributes.modification = Date.now();
+    this.buffer = null;
+
+    if (typeof contents === "string") {
+      const encoded = encoder.encode(contents);
+      this.contents = new Int8Array(encoded);
+    } else {
+      this.contents = contents instanceof Int8Array ? contents : new Int8Array(contents);
+    }
+    this.attributes.size = this.contents.length;
+    this.save();
+    if (this.semaphore) this.semaphore.signal();
+    return { value: true };
+  }
+
+  public writeContents(offset: number, contents: Int8Array): Result<true> {
+    if (this.children !== null) throw Error("Not a file");
+    if (offset === 0) return this.setContents(new Int8Array(contents));
+
+    if (!this.exists) return { error: "File has been deleted", value: null };
+
+    const existing = this.getContents();
+    if (offset > existing.length) return { error: "Cannot write past the end of the file", value: null };
+
+    // The persistance may hold on to our current contents, so we can only write in place when appending to a buffer
+    // we own. Otherwise, copy the file into a new buffer, growing it geometrically so that repeated appends only copy
+    // the file O(log n) times.
+    const length = offset + contents.length;
+    let buffer = this.buffer;
+    if (buffer === null || offset !== existing.length || length > buffer.length) {
+      buffer = new Int8Array(Math.max(length, existing.length * 2, 16));
+      buffer.set(existing.subarray(0, offset));
+    }
+    buffer.set(contents, offset);
+
+    this.attributes.modification = Date.now();
+    this.buffer = buffer;
+    this.contents = buffer.subarray(0, length);
+    this.attributes.size = length;
+    this.save();
+    if (this.semaphore) this.semaphore.signal();
+    return { value: true };
+  }
+
+  /**
+   * Replace this entry's attributes, such as when copying them from another file system.
+   *
+   * @param attributes The new attributes.
+   */
+  public setAttributes(attributes: BasicAttributes): void {
+    this.attributes = { ...attributes };
+    this.persistance.setAttributes(this.path, this.attributes);
+  }
+
+  public delete(): void {
+    this.exists = false;
+    if (this.children === null) {
+      this.persistance.removeContents(this.path);
+    } else {
+      this.persistance.removeChildren(this.path);
+    }
+    this.persistance.removeAttributes(this.path);
+    if (this.semaphore) this.semaphore.signal();
+  }
+
+  public move(path: string): void {
+    this.persistance.moveEntry(this.path, path);
+    this.path = path;
+    if (this.semaphore) this.semaphore.signal();
+  }
+
+  private save(): void {
+    if (this.children !== null) this.persistance.setChildren(this.path, this.children);
+    if (this.contents !== null) this.persistance.setContents(this.path, this.contents);
+    this.persistance.setAttributes(this.path, this.attributes);
+  }
+
+  public getSemaphore(): Semaphore {
+    return this.semaphore ?? (this.semaphore = new Semaphore());
+  }
+
+  public doesExist(): boolean {
+    return this.exists;
+  }
+
+  public getAttributes(): FileAttributes {
+    const directory = this.isDirectory();
+    return { ...this.attributes, directory, size: directory ? 0 : this.attributes.size ?? this.getContents().length };
+  }
+}
+
+/**
+ * A computer's file system, loaded from and saved to a {@link ComputerPersistance}.
+ */
+export class FileSystem {
+  private readonly persistance: ComputerPersistance;
+  private readonly entries: Map<string, FileSystemEntry> = new Map<string, FileSystemEntry>();
+
+  public constructor(persistance: ComputerPersistance) {
+    this.persistance = persistance;
+
+    const queue = [""];
+    while (true) {
+      const path = queue.pop();
+      if (path === undefined) break;
+
+      const children = persistance.getChildren(path);
+      const attributes = persistance.getAttributes(path);
+      if (children !== null) {
+        this.entries.set(path, new FileSystemEntry(persistance, path, children, null, attributes));
+        for (const child of children) queue.push(joinName(path, child));
+      } else if (path === "") {
+        // Create a new entry
+        this.entries.set("", new FileSystemEntry(persistance, "", [], null, attributes));
+      } else {
+        // Assume it's a file
+        this.entries.set(path, new FileSystemEntry(persistance, path, null, null, attributes));
+      }
+    }
+  }
+
+  public getEntry(path: string): FileSystemEntry | null {
+    return this.entries.get(path) ?? null;
+  }
+
+  public createDirectory(path: string): Result<FileSystemEntry> {
+    const entry = this.entries.get(path);
+    if (!entry) {
+      const [parentName, fileName] = splitName(path);
+      const parent = this.createDirectory(parentName);
+      if (parent.value === null) return parent;
+
+      const file = FileSystemEntry.create(this.persistance, path, true);
+      parent.value.setChildren([...parent.value.getChildren(), fileName]);
+      this.entries.set(path, file);
+      return { value: file };
+    } else if (entry.isDirectory()) {
+      return { value: entry };
+    } else {
+      return { error: `/${path}: File exists`, value: null };
+    }
+  }
+
+  public createFile(path: string): Result<FileSystemEntry> {
+    const entry = this.entries.get(path);
+    if (!entry) {
+      const [parentName, fileName] = splitName(path);
+      const parent = this.entries.get(parentName);
+      if (!parent?.isDirectory()) return { error: `/${path}: Access denied`, value: null };
+
+      const file = FileSystemEntry.create(this.persistance, path, false);
+      parent.setChildren([...parent.getChildren(), fileName]);
+      this.entries.set(path, file);
+      return { value: file };
+    } else if (entry.isDirectory()) {
+      return { error: `/${path}: Cannot write to directory`, value: null };
+    } else {
+      return { value: entry };
+    }
+  }
+
+  public deleteEntry(path: string): void {
+    const pathEntry = this.entries.get(path);
+    if (!pathEntry) return;
+
+    // Remove from the parent
+    const [parentName, fileName] = splitName(path);
+    const parent = this.entries.get(parentName)!;
+    parent.setChildren(parent.getChildren().filter(x => x !== fileName));
+
+    // And delete any children
+    const queue = [path];
+    while (true) {
+      const file = queue.pop();
+      if (file === undefined) break;
+
+      const entry = this.entries.get(file);
+      if (!entry) continue;
+
+      this.entries.delete(file);
+      entry.delete();
+
+      if (!entry.isDirectory()) continue;
+      for (const child of entry.getChildren()) queue.push(joinName(file, child));
+    }
+  }
+
+  public moveEntry(source: string, dest: string): Result<true> {
+    if (!this.entries.has(source)) return { error: `/${source}: No such file`, value: null };
+    if (this.entries.has(dest)) return { error: `/${dest}: File exists`, value: null };
+    if (dest.startsWith(source + "/")) return { error: `/${source}: Can't move a directory inside itself`, value: null };
+
+    const [destParentName, destName] = splitName(dest);
+    const destParent = this.createDirectory(destParentName);
+    if (destParent.value === null) return destParent;
+
+    // Move the entry from its old parent to the new one.
+    const [sourceParentName, sourceName] = splitName(source);
+    const sourceParent = this.entries.get(sourceParentName)!;
+    sourceParent.setChildren(sourceParent.getChildren().filter(x => x !== sourceName));
+    destParent.value.setChildren([...destParent.value.getChildren(), destName]);
+
+    // And then relink it and any children under their new name.
+    const queue = [source];
+    while (true) {
+      const file = queue.pop();
+      if (file === undefined) break;
+
+      const entry = this.entries.get(file);
+      if (!entry) continue;
+
+      const newPath = dest + file.substring(source.length);
+      this.entries.delete(file);
+      this.entries.set(newPath, entry);
+      entry.move(newPath);
+
+      if (!entry.isDirectory()) continue;
+      for (const child of entry.getChildren()) queue.push(joinName(file, child));
+    }
+
+    return { value: true };
+  }
+
+  /**
+   * Get a copy of every entry in this file system, including the contents of every file.
+   *
+   * @param root Only include this entry and its children, rather than the whole file system.
+   * @return The entries in this file system.
+   */
+  public snapshot(root: string = ""): Array<StoredEntry> {
+    const entries: Array<StoredEntry> = [];
+    for (const [path, entry] of this.entries) {
+      if (root !== "" && path !== root && !path.startsWith(root + "/")) continue;
+
+      const { creation, modification, size } = entry.getAttributes();
+      const attributes: BasicAttributes = { creation, modification, size };
+      entries.push(entry.isDirectory()
+        ? { path, children: entry.getChildren(), attributes }
+        : { path, contents: entry.getContents(), attributes });
+    }
+    return entries;
+  }
+
+  /**
+   * Replace an entry and its children with a copy taken by {@link snapshot}.
+   *
+   * @param root    The entry to replace.
+   * @param entries The entry and its children, or an empty array if the entry should be deleted.
+   */
+  public restore(root: string, entries: Array<StoredEntry>): void {
+    this.deleteEntry(root);
+    if (entries.length === 0) return;
+
+    const [parentName, fileName] = splitName(root);
+    const parent = this.createDirectory(parentName);
+    if (parent.value === null) return;
+    parent.value.setChildren([...parent.value.getChildren(), fileName]);
+
+    for (const { path, children, contents, attributes } of entries) {
+      const entry = FileSystemEntry.create(this.persistance, path, children !== undefined);
+      if (children !== undefined) entry.setChildren(children);
+      if (contents !== undefined) entry.setContents(contents);
+      if (attributes !== undefined) entry.setAttributes(attributes);
+      this.entries.set(path, entry);
+    }
+  }
+
+  /**
+   * Apply changes recorded (with {@link RecordingPersistence}) from another copy of this file system.
+   *
+   * Changes describe individual entries, rather than whole operations, so this does not check that the file system
+   * remains consistent. Instead, this relies on both copies starting from the same state.
+   *
+   * @param changes The changes to apply.
+   */
+  public applyChanges(changes: Array<FileChange>): void {
+    for (const change of changes) {
+      switch (change.kind) {
+        case "children": {
+          let entry = this.entries.get(change.path);
+          if (!entry) this.entries.set(change.path, entry = FileSystemEntry.create(this.persistance, change.path, true));
+          entry.setChildren(change.children);
+          break;
+        }
+        case "contents": {
+          let entry = this.entries.get(change.path);
+          if (!entry) this.entries.set(change.path, entry = FileSystemEntry.create(this.persistance, change.path, false));
+          entry.setContents(change.contents);
+          break;
+        }
+        case "attributes":
+          this.entries.get(change.path)?.setAttributes(change.attributes);
+          break;
+        case "remove": {
+          const entry = this.entries.get(change.path);
+          if (!entry) break;
+
+          this.entries.delete(change.path);
+          entry.delete();
+          break;
+        }
+        case "move": {
+          const entry = this.entries.get(change.from);
+          if (!entry) break;
+
+          this.entries.delete(change.from);
+          this.entries.set(change.to, entry);
+          entry.move(change.to);
+          break;
+        }
+      }
+    }
+  }
+}
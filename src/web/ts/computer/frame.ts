@@ -0,0 +1,49 @@
+/**
+ * Receives the contents of a terminal frame, as decoded by {@link readTerminalFrame}.
+ */
+export type TerminalFrameReader = {
+  /** Set the terminal's size and cursor. */
+  setCursor(width: number, height: number, x: number, y: number, blink: boolean, cursorColour: number): void,
+  /** Set a palette entry, with each component between 0 and 255. */
+  setPaletteColour(colour: number, r: number, g: number, b: number): void,
+  /** Set a line of the terminal, with each colour being a string of hex digits. */
+  setLine(line: number, text: string, fore: string, back: string): void,
+};
+
+/**
+ * Decode a packed terminal frame. See TerminalMonitor.java for the layout of this frame.
+ *
+ * @param frame  The packed frame.
+ * @param length The length of this frame.
+ * @param reader The reader to send the decoded frame to.
+ */
+export const readTerminalFrame = (frame: Int8Array, length: number, reader: TerminalFrameReader): void => {
+  const bytes = new Uint8Array(frame.buffer, frame.byteOffset, length);
+  const view = new DataView(frame.buffer, frame.byteOffset, length);
+
+  const width = view.getInt32(0, true);
+  reader.setCursor(
+    width, view.getInt32(4, true),
+    view.getInt32(8, true), view.getInt32(12, true), bytes[16] !== 0, bytes[17],
+  );
+
+  let offset = 18;
+  const paletteCount = bytes[offset++];
+  for (let i = 0; i < paletteCount; i++, offset += 4) {
+    reader.setPaletteColour(bytes[offset], bytes[offset + 1], bytes[offset + 2], bytes[offset + 3]);
+  }
+
+  const lineCount = view.getInt32(offset, true);
+  offset += 4;
+  for (let i = 0; i < lineCount; i++) {
+    const line = view.getInt32(offset, true);
+    offset += 4;
+    reader.setLine(
+      line,
+      String.fromCharCode(...bytes.subarray(offset, offset + width)),
+      String.fromCharCode(...bytes.subarray(offset + width, offset + width * 2)),
+      String.fromCharCode(...bytes.subarray(offset + width * 2, offset + width * 3)),
+    );
+    offset += width * 3;
+  }
+};
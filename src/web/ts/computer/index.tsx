@@ -2,19 +2,21 @@ import { Semaphore, Terminal, TerminalData, save as saveBlob } from "@squid-dev/
 import type JSZip from "jszip";
 import { Component, type VNode } from "preact";
 import newZip from "../files/zip";
-import { Download } from "../font";
+import { Download, Record, Stop } from "../font";
 import type { ConfigFactory } from "../java";
 import type { Settings } from "../settings";
 import { ComputerAccess, FileSystemEntry, joinName } from "./access";
 import Editor, { type LazyModel, createModel } from "./editor";
 import { FileTree } from "./files";
-import { StoragePersistence, VoidPersistence } from "./persist";
+import type { ComputerPersistance } from "./persist";
+import { saveRecording } from "./recording";
 import {
   actionButton, active, computerSplit, computerView, dragging as draggingClass, fileComputer,
   fileComputerActions, fileComputerControl, fileDropMarker, fileList, terminalView
 } from "../styles.css";
 
 export type ComputerProps = {
+  persistence: ComputerPersistance,
   focused: boolean,
   settings: Settings,
   computerSettings: ConfigFactory,
@@ -39,6 +41,7 @@ type ComputerState = {
   on: boolean,
 
   dragging: boolean,
+  recording: boolean,
 };
 
 const createZip = async (computer: ComputerAccess): Promise<Blob> => {
@@ -87,8 +90,7 @@ export class Computer extends Component<ComputerProps, ComputerState> {
     const terminal = new TerminalData();
     const terminalChanged = new Semaphore();
     const computer = new ComputerAccess(
-      __storageBackend__ === "none" ? new VoidPersistence() : new StoragePersistence(0),
-      terminal, terminalChanged,
+      props.persistence, terminal, terminalChanged,
       (label, on) => this.setState({ label, on }),
     );
 
@@ -126,11 +128,12 @@ fn()`);
       id: 0, on: false, label: computer.getLabel(),
 
       dragging: false,
+      recording: false,
     });
   }
 
   public componentDidMount(): void {
-    this.state.computer.start(this.props.computerSettings);
+    this.state.computer.start(this.props.computerSettings, { worker: this.props.settings.useWorker });
   }
 
   public componentWillUnmount(): void {
@@ -143,16 +146,16 @@ fn()`);
 
   public shouldComponentUpdate(
     { focused, settings }: Readonly<ComputerProps>,
-    { id, label, on, activeFile, dragging }: Readonly<ComputerState>,
+    { id, label, on, activeFile, dragging, recording }: Readonly<ComputerState>,
   ): boolean {
     return focused !== this.props.focused || settings !== this.props.settings ||
       id !== this.state.id || label !== this.state.label || on !== this.state.on ||
-      activeFile !== this.state.activeFile || dragging !== this.state.dragging;
+      activeFile !== this.state.activeFile || dragging !== this.state.dragging || recording !== this.state.recording;
   }
 
   public render(
     { settings, focused }: ComputerProps,
-    { terminal, terminalChanged, computer, activeFile, id, label, on, dragging }: ComputerState,
+    { terminal, terminalChanged, computer, activeFile, id, label, on, dragging, recording }: ComputerState,
   ): VNode<unknown> {
     return <div class={computerView}>
       <div class={computerSplit}>
@@ -167,6 +170,10 @@ fn()`);
                 title="Download all files as a zip">
                 <Download />
               </button>
+              {settings.useWorker ? null : <button class={actionButton} type="button" onClick={this.toggleRecording}
+                title={recording ? "Stop recording, and download the recording" : "Record input to this computer"}>
+                {recording ? <Stop /> : <Record />}
+              </button>}
             </div>
           </div>
 
@@ -184,7 +191,10 @@ fn()`);
               id={id} label={label} on={on} />
           </div>
           : <Editor model={activeFile.model} settings={settings} focused={focused}
-            doSave={contents => activeFile.file.setContents(contents)} />}
+            doSave={contents => {
+              activeFile.file.setContents(contents);
+              computer.filesChanged(activeFile.path);
+            }} />}
       </div>
     </div>;
   }
@@ -204,6 +214,7 @@ fn()`);
       if (!result.value) continue;
 
       result.value.setContents(contents);
+      computer.filesChanged(uniqueName);
       return;
     }
 
@@ -226,7 +237,10 @@ fn()`);
             if (computer.getEntry(dirName)) continue;
 
             const result = this.state.computer.createDirectory(dirName);
-            if (result.value) break;
+            if (result.value) {
+              computer.filesChanged(dirName);
+              break;
+            }
           }
 
           const offset = isSimpleZip(zip, zipName) ? zipName.length + 1 : 0;
@@ -238,6 +252,7 @@ fn()`);
             if (entry.dir) {
               if (fullName.endsWith("/")) fullName = fullName.substring(0, fullName.length - 1);
               if (!computer.createDirectory(fullName)) console.warn(`Cannot create directory ${fullName}.`);
+              computer.filesChanged(fullName);
 
             } else {
               this.addOneFile(fullName, await entry.async("arraybuffer"));
@@ -298,6 +313,26 @@ fn()`);
       .catch(err => console.error(err));
   };
 
+  private toggleRecording = (e: Event): void => {
+    e.preventDefault();
+    e.stopPropagation();
+
+    const computer = this.state.computer;
+    if (!this.state.recording) {
+      try {
+        computer.startRecording();
+        this.setState({ recording: true });
+      } catch (err) {
+        console.error("Cannot start recording", err);
+      }
+      return;
+    }
+
+    this.setState({ recording: false });
+    const recording = computer.stopRecording();
+    if (recording) saveBlob("recording", "json", new Blob([saveRecording(recording)], { type: "application/json" }));
+  };
+
   private startDrag = (e: DragEvent): void => {
     e.preventDefault();
     if (!this.state.dragging) this.setState({ dragging: true });
@@ -1,4 +1,6 @@
 import { decode, encode } from "../files/encode";
+import { inflate } from "../files/inflate";
+import { compress } from "../java";
 import * as storage from "../storage";
 
 const empty = new Int8Array(0);
@@ -6,12 +8,13 @@ const empty = new Int8Array(0);
 export type BasicAttributes = {
   creation: number,
   modification: number,
+  size?: number, /** The size of this file. This is absent for directories and files saved by older versions. */
 }
 
 /**
  * A generic way of storing and loading computer information.
  *
- * This should not be treated as the cannonical source of file information (see {@link ComputerAccess} for that), but
+ * This should not be treated as the cannonical source of file information (see {@link FileSystem} for that), but
  * rather as a backend for the computer to finally save to.
  */
 export interface ComputerPersistance {
@@ -36,6 +39,11 @@ export interface ComputerPersistance {
   setAttributes(path: string, attributes: BasicAttributes): void;
 
   removeAttributes(path: string): void;
+
+  /**
+   * Move the contents, children and attributes of a single entry to a new path.
+   */
+  moveEntry(from: string, to: string): void;
 }
 
 /**
@@ -53,6 +61,7 @@ export class VoidPersistence implements ComputerPersistance {
   public getAttributes(): null { return null; }
   public setAttributes(): void { }
   public removeAttributes(): void { }
+  public moveEntry(): void { }
 }
 
 /**
@@ -129,4 +138,892 @@ export class StoragePersistence implements ComputerPersistance {
   public removeAttributes(path: string): void {
     storage.remove(`${this.prefix}.files[${path}].attributes`);
   }
+
+  public moveEntry(from: string, to: string): void {
+    // Move the raw stored values, so we don't need to decode and re-encode the file's contents.
+    for (const suffix of ["b64", "children", "attributes"]) {
+      const value = storage.get(`${this.prefix}.files[${from}].${suffix}`);
+      if (value === null) continue;
+
+      storage.set(`${this.prefix}.files[${to}].${suffix}`, value);
+      storage.remove(`${this.prefix}.files[${from}].${suffix}`);
+    }
+  }
+}
+
+/**
+ * A single entry in the file system, with all of its stored information.
+ */
+export type StoredEntry = {
+  path: string,
+  contents?: Int8Array,
+  children?: Array<string>,
+  attributes?: BasicAttributes,
+};
+
+/**
+ * A change made to a single entry, as recorded by {@link RecordingPersistence}.
+ */
+export type FileChange
+  = { kind: "children", path: string, children: Array<string> }
+  | { kind: "contents", path: string, contents: Int8Array }
+  | { kind: "attributes", path: string, attributes: BasicAttributes }
+  | { kind: "remove", path: string }
+  | { kind: "move", from: string, to: string };
+
+/**
+ * Persistance instance which keeps everything in memory.
+ *
+ * This is used by the copy of the file system inside a worker, where the page's copy is responsible for actually
+ * saving files.
+ */
+export class MemoryPersistence implements ComputerPersistance {
+  private label: string | null;
+  private readonly entries: Map<string, StoredEntry>;
+
+  public constructor(entries: Array<StoredEntry>, label: string | null) {
+    this.entries = new Map(entries.map((x): [string, StoredEntry] => [x.path, x]));
+    this.label = label;
+  }
+
+  private get(path: string): StoredEntry {
+    let entry = this.entries.get(path);
+    if (entry === undefined) {
+      entry = { path };
+      this.entries.set(path, entry);
+    }
+    return entry;
+  }
+
+  public getLabel(): string | null {
+    return this.label;
+  }
+
+  public setLabel(label: string | null): void {
+    this.label = label;
+  }
+
+  public getContents(path: string): Int8Array {
+    return this.entries.get(path)?.contents ?? empty;
+  }
+
+  public setContents(path: string, contents: Int8Array): void {
+    this.get(path).contents = contents;
+  }
+
+  public removeContents(path: string): void {
+    const entry = this.entries.get(path);
+    if (entry) delete entry.contents;
+  }
+
+  public getChildren(path: string): Array<string> | null {
+    return this.entries.get(path)?.children ?? null;
+  }
+
+  public setChildren(path: string, children: Array<string>): void {
+    this.get(path).children = children;
+  }
+
+  public removeChildren(path: string): void {
+    const entry = this.entries.get(path);
+    if (entry) delete entry.children;
+  }
+
+  public getAttributes(path: string): BasicAttributes | null {
+    return this.entries.get(path)?.attributes ?? null;
+  }
+
+  public setAttributes(path: string, attributes: BasicAttributes): void {
+    this.get(path).attributes = { ...attributes };
+  }
+
+  public removeAttributes(path: string): void {
+    // Attributes are always removed last, so we can drop the whole entry.
+    this.entries.delete(path);
+  }
+
+  public moveEntry(from: string, to: string): void {
+    const entry = this.entries.get(from);
+    if (!entry) return;
+
+    this.entries.delete(from);
+    this.entries.set(to, { ...entry, path: to });
+  }
+}
+
+/**
+ * Wraps another persistance instance, recording any changes so they can be applied to another copy of the file system
+ * (see {@link FileSystem.applyChanges}).
+ */
+export class RecordingPersistence implements ComputerPersistance {
+  private readonly inner: ComputerPersistance;
+  private changes: Array<FileChange> = [];
+
+  /**
+   * Whether changes are currently being recorded.
+   */
+  public recording: boolean;
+
+  public constructor(inner: ComputerPersistance, recording: boolean) {
+    this.inner = inner;
+    this.recording = recording;
+  }
+
+  /**
+   * Get and clear the list of recorded changes.
+   */
+  public takeChanges(): Array<FileChange> {
+    const changes = this.changes;
+    this.changes = [];
+    return changes;
+  }
+
+  private record(change: FileChange): void {
+    if (this.recording) this.changes.push(change);
+  }
+
+  public getLabel(): string | null {
+    return this.inner.getLabel();
+  }
+
+  public setLabel(label: string | null): void {
+    this.inner.setLabel(label);
+  }
+
+  public getContents(path: string): Int8Array {
+    return this.inner.getContents(path);
+  }
+
+  public setContents(path: string, contents: Int8Array): void {
+    this.record({ kind: "contents", path, contents });
+    this.inner.setContents(path, contents);
+  }
+
+  public removeContents(path: string): void {
+    this.inner.removeContents(path);
+  }
+
+  public getChildren(path: string): Array<string> | null {
+    return this.inner.getChildren(path);
+  }
+
+  public setChildren(path: string, children: Array<string>): void {
+    this.record({ kind: "children", path, children });
+    this.inner.setChildren(path, children);
+  }
+
+  public removeChildren(path: string): void {
+    this.inner.removeChildren(path);
+  }
+
+  public getAttributes(path: string): BasicAttributes | null {
+    return this.inner.getAttributes(path);
+  }
+
+  public setAttributes(path: string, attributes: BasicAttributes): void {
+    this.record({ kind: "attributes", path, attributes: { ...attributes } });
+    this.inner.setAttributes(path, attributes);
+  }
+
+  public removeAttributes(path: string): void {
+    // Entries are always deleted as a whole, with the attributes removed last, so we only need to record this once.
+    this.record({ kind: "remove", path });
+    this.inner.removeAttributes(path);
+  }
+
+  public moveEntry(from: string, to: string): void {
+    this.record({ kind: "move", from, to });
+    this.inner.moveEntry(from, to);
+  }
 }
+
+/**
+ * Files smaller than this are always stored uncompressed, as the saving is not worth the cost of decompressing them.
+ */
+const compressionThreshold = 512;
+
+// Compressed files start with this header, followed by the compression method and the uncompressed size.
+const compressedMagic = [0x00, 0x43, 0x43, 0x5a]; // "\0CCZ"
+const compressedHeaderSize = compressedMagic.length + 5;
+const methodStored = 0;
+const methodDeflate = 1;
+
+const hasCompressedHeader = (contents: Int8Array): boolean => {
+  if (contents.length < compressedHeaderSize) return false;
+  for (let i = 0; i < compressedMagic.length; i++) {
+    if (contents[i] !== compressedMagic[i]) return false;
+  }
+  return true;
+};
+
+const withHeader = (method: number, size: number, body: Int8Array): Int8Array => {
+  const contents = new Int8Array(compressedHeaderSize + body.length);
+  contents.set(compressedMagic);
+  const view = new DataView(contents.buffer);
+  view.setUint8(compressedMagic.length, method);
+  view.setUint32(compressedMagic.length + 1, size, true);
+  contents.set(body, compressedHeaderSize);
+  return contents;
+};
+
+/**
+ * Convert a file's contents to the form they are saved in, compressing them if worthwhile. See
+ * {@link CompressedPersistence} for details of the format.
+ *
+ * @param contents The file's contents.
+ * @return The contents to save.
+ */
+const compressContents = (contents: Int8Array): Int8Array => {
+  let stored = contents;
+  if (contents.length >= compressionThreshold) {
+    const compressed = compress(contents);
+    if (compressed !== null && compressed.length + compressedHeaderSize < contents.length) {
+      stored = withHeader(methodDeflate, contents.length, compressed);
+    }
+  }
+
+  if (stored === contents && hasCompressedHeader(contents)) stored = withHeader(methodStored, contents.length, contents);
+  return stored;
+};
+
+/**
+ * Convert a file's saved contents back to its actual contents, undoing {@link compressContents}.
+ *
+ * @param path The file's path, used for error messages.
+ * @param contents The saved contents.
+ * @return The file's contents.
+ */
+const decompressContents = (path: string, contents: Int8Array): Int8Array => {
+  if (!hasCompressedHeader(contents)) return contents;
+
+  const view = new DataView(contents.buffer, contents.byteOffset, contents.byteLength);
+  const method = view.getUint8(compressedMagic.length);
+  const size = view.getUint32(compressedMagic.length + 1, true);
+  const body = contents.subarray(compressedHeaderSize);
+  switch (method) {
+    case methodStored:
+      return body;
+    case methodDeflate:
+      try {
+        const inflated = inflate(new Uint8Array(body.buffer, body.byteOffset, body.byteLength), size);
+        return new Int8Array(inflated.buffer, inflated.byteOffset, inflated.byteLength);
+      } catch (e) {
+        console.error(`Cannot decompress "${path}"`, e);
+        return contents;
+      }
+    default:
+      // Not a file we've written, so just treat it as an uncompressed file.
+      return contents;
+  }
+};
+
+/**
+ * Wraps another persistance instance, compressing file contents before they are saved.
+ *
+ * Compressed files are stored with a short header, which records the compression method and uncompressed size. Small
+ * or incompressible files are stored as-is. Files which happen to start with the header are stored with the "stored"
+ * method, so they are not mistaken for compressed ones.
+ *
+ * Files are only decompressed when their contents are requested, which {@link FileSystemEntry} does lazily. Their
+ * logical size is stored in their attributes, and so is unaffected by compression.
+ *
+ * Compression is done by the emulator, and so files saved before it has loaded (or while running inside a worker) are
+ * stored uncompressed.
+ */
+export class CompressedPersistence implements ComputerPersistance {
+  private readonly inner: ComputerPersistance;
+
+  public constructor(inner: ComputerPersistance) {
+    this.inner = inner;
+  }
+
+  public getLabel(): string | null {
+    return this.inner.getLabel();
+  }
+
+  public setLabel(label: string | null): void {
+    this.inner.setLabel(label);
+  }
+
+  public getContents(path: string): Int8Array {
+    return decompressContents(path, this.inner.getContents(path));
+  }
+
+  public setContents(path: string, contents: Int8Array): void {
+    this.inner.setContents(path, compressContents(contents));
+  }
+
+  public removeContents(path: string): void {
+    this.inner.removeContents(path);
+  }
+
+  public getChildren(path: string): Array<string> | null {
+    return this.inner.getChildren(path);
+  }
+
+  public setChildren(path: string, children: Array<string>): void {
+    this.inner.setChildren(path, children);
+  }
+
+  public removeChildren(path: string): void {
+    this.inner.removeChildren(path);
+  }
+
+  public getAttributes(path: string): BasicAttributes | null {
+    return this.inner.getAttributes(path);
+  }
+
+  public setAttributes(path: string, attributes: BasicAttributes): void {
+    this.inner.setAttributes(path, attributes);
+  }
+
+  public removeAttributes(path: string): void {
+    this.inner.removeAttributes(path);
+  }
+
+  public moveEntry(from: string, to: string): void {
+    this.inner.moveEntry(from, to);
+  }
+}
+
+type PendingEntry = {
+  contents?: Int8Array | null,
+  children?: Array<string> | null,
+  attributes?: BasicAttributes | null,
+};
+
+/**
+ * Wraps another persistance instance, buffering any changes until {@link BatchedPersistence.commit} is called.
+ *
+ * Changes are committed in an order which ensures the stored file system is always consistent, even if the page is
+ * closed part way through. New files are written before any directory listings which refer to them, and removed files
+ * are deleted only after the directory listings which referred to them.
+ */
+export class BatchedPersistence implements ComputerPersistance {
+  private readonly inner: ComputerPersistance;
+  private readonly pending: Map<string, PendingEntry> = new Map();
+  private commitTimer: ReturnType<typeof setTimeout> | null = null;
+
+  public constructor(inner: ComputerPersistance) {
+    this.inner = inner;
+  }
+
+  private get(path: string): PendingEntry {
+    let entry = this.pending.get(path);
+    if (entry === undefined) {
+      entry = {};
+      this.pending.set(path, entry);
+
+      // Changes are normally committed at the end of each computer tick. However, computers which are off are not
+      // ticked, so fall back to committing on a timer.
+      if (this.commitTimer === null) this.commitTimer = setTimeout(() => this.commit(), 1000);
+    }
+    return entry;
+  }
+
+  /**
+   * Write all pending changes to the underlying persistance.
+   */
+  public commit(): void {
+    if (this.commitTimer !== null) {
+      clearTimeout(this.commitTimer);
+      this.commitTimer = null;
+    }
+    if (this.pending.size === 0) return;
+
+    const pending = [...this.pending];
+    this.pending.clear();
+
+    for (const [path, { contents, attributes }] of pending) {
+      if (contents) this.inner.setContents(path, contents);
+      if (attributes) this.inner.setAttributes(path, attributes);
+    }
+    for (const [path, { children }] of pending) {
+      if (children) this.inner.setChildren(path, children);
+    }
+    for (const [path, { children }] of pending) {
+      if (children === null) this.inner.removeChildren(path);
+    }
+    for (const [path, { contents, attributes }] of pending) {
+      if (contents === null) this.inner.removeContents(path);
+      if (attributes === null) this.inner.removeAttributes(path);
+    }
+  }
+
+  public getLabel(): string | null {
+    return this.inner.getLabel();
+  }
+
+  public setLabel(label: string | null): void {
+    this.inner.setLabel(label);
+  }
+
+  public getContents(path: string): Int8Array {
+    const contents = this.pending.get(path)?.contents;
+    if (contents === undefined) return this.inner.getContents(path);
+    return contents ?? empty;
+  }
+
+  public setContents(path: string, contents: Int8Array): void {
+    this.get(path).contents = contents;
+  }
+
+  public removeContents(path: string): void {
+    this.get(path).contents = null;
+  }
+
+  public getChildren(path: string): Array<string> | null {
+    const children = this.pending.get(path)?.children;
+    return children === undefined ? this.inner.getChildren(path) : children;
+  }
+
+  public setChildren(path: string, children: Array<string>): void {
+    this.get(path).children = children;
+  }
+
+  public removeChildren(path: string): void {
+    this.get(path).children = null;
+  }
+
+  public getAttributes(path: string): BasicAttributes | null {
+    const attributes = this.pending.get(path)?.attributes;
+    return attributes === undefined ? this.inner.getAttributes(path) : attributes;
+  }
+
+  public setAttributes(path: string, attributes: BasicAttributes): void {
+    this.get(path).attributes = { ...attributes };
+  }
+
+  public removeAttributes(path: string): void {
+    this.get(path).attributes = null;
+  }
+
+  public moveEntry(from: string, to: string): void {
+    // Moves are rare, so just commit everything beforehand rather than tracking them separately.
+    this.commit();
+    this.inner.moveEntry(from, to);
+  }
+}
+
+
+const requestPromise = <T>(request: IDBRequest<T>): Promise<T> => new Promise((resolve, reject) => {
+  request.onsuccess = () => resolve(request.result);
+  request.onerror = () => reject(request.error ?? new Error("Unknown IndexedDB error"));
+});
+
+const transactionPromise = (transaction: IDBTransaction): Promise<void> => new Promise((resolve, reject) => {
+  transaction.oncomplete = () => resolve();
+  transaction.onerror = () => reject(transaction.error ?? new Error("Unknown IndexedDB error"));
+  transaction.onabort = () => reject(transaction.error ?? new Error("Transaction aborted"));
+});
+
+let database: Promise<IDBDatabase> | null = null;
+const openDatabase = (): Promise<IDBDatabase> => database ??= new Promise((resolve, reject) => {
+  const request = indexedDB.open("copy-cat", 2);
+  request.onupgradeneeded = () => {
+    const db = request.result;
+    if (!db.objectStoreNames.contains("files")) db.createObjectStore("files");
+    if (!db.objectStoreNames.contains("blobs")) db.createObjectStore("blobs");
+  };
+  request.onsuccess = () => resolve(request.result);
+  request.onerror = () => reject(request.error ?? new Error("Cannot open database"));
+});
+
+/**
+ * Files smaller than this are stored alongside their entry, rather than in the blob store.
+ */
+const blobThreshold = 256;
+
+/**
+ * An entry as stored in the "files" object store. Larger files store the hash of their contents in `blob`
+ * rather than the contents themselves.
+ */
+type StoredRecord = StoredEntry & { blob?: string };
+
+/**
+ * A file's contents, as stored in the "blobs" object store. This is shared by every file (on every computer) with the
+ * same contents.
+ */
+type StoredBlob = { contents: Int8Array, refs: number };
+
+/**
+ * Blobs which have been loaded (in their saved, possibly compressed, form), shared between every computer on the page.
+ * Blobs are removed once no open computer has a file which refers to them.
+ */
+const loadedBlobs = new Map<string, Int8Array>();
+
+/**
+ * The number of files, across every open computer, which refer to each blob in {@link loadedBlobs}.
+ */
+const blobUsers = new Map<string, number>();
+
+const useBlob = (hash: string, contents: Int8Array): void => {
+  blobUsers.set(hash, (blobUsers.get(hash) ?? 0) + 1);
+  if (!loadedBlobs.has(hash)) loadedBlobs.set(hash, contents);
+};
+
+const releaseBlob = (hash: string): void => {
+  const users = (blobUsers.get(hash) ?? 0) - 1;
+  if (users > 0) {
+    blobUsers.set(hash, users);
+  } else {
+    blobUsers.delete(hash);
+    loadedBlobs.delete(hash);
+  }
+};
+
+/**
+ * Compute the hash of a file's contents.
+ *
+ * @param contents The contents to hash.
+ * @return The hex-encoded hash, or `null` if hashing is not available (such as on pages not served over HTTPS).
+ */
+const hashContents = async (contents: Int8Array): Promise<string | null> => {
+  if (typeof crypto === "undefined" || !crypto.subtle) return null;
+
+  const digest = new Uint8Array(await crypto.subtle.digest("SHA-256", contents));
+  let hash = "";
+  for (const byte of digest) hash += (byte < 16 ? "0" : "") + byte.toString(16);
+  return hash;
+};
+
+/**
+ * Persistance instance which saves to IndexedDB.
+ *
+ * Files are stored as raw binary blobs, rather than base64 encoded strings. As IndexedDB is asynchronous, every entry
+ * is loaded into memory when the computer is opened, and changes are written back in the background.
+ *
+ * The contents of larger files are stored in a separate, content-addressed blob store which is shared between all
+ * computers. Each blob is keyed by the hash of its contents and counts how many files refer to it, so identical files
+ * (such as the same program installed on several computers) are only stored once.
+ *
+ * Contents are compressed (as in {@link CompressedPersistence}) when saved. Blobs are keyed by the hash of their
+ * uncompressed contents, so identical files share a blob no matter how (or whether) they were compressed. Loaded files
+ * are only decompressed when their contents are requested.
+ *
+ * The first time a computer is opened, any files saved by {@link StoragePersistence} are moved into IndexedDB.
+ */
+export class IndexedDbPersistence implements ComputerPersistance {
+  private readonly db: IDBDatabase;
+  private readonly prefix: string;
+  private readonly entries: Map<string, StoredEntry>;
+
+  /** The blob each path refers to in the database. */
+  private readonly storedBlobs: Map<string, string>;
+
+  /** Paths whose contents are still in their saved form, and so may need to be decompressed. */
+  private readonly packed: Set<string> = new Set();
+
+  private readonly dirty: Set<string> = new Set();
+  private flushScheduled: boolean = false;
+  private flushing: Promise<void> = Promise.resolve();
+  private afterFlush: (() => void) | null = null;
+
+  private constructor(db: IDBDatabase, id: number, entries: Map<string, StoredEntry>, storedBlobs: Map<string, string>) {
+    this.db = db;
+    this.prefix = `computer[${id}]`;
+    this.entries = entries;
+    this.storedBlobs = storedBlobs;
+  }
+
+  public static async open(id: number): Promise<IndexedDbPersistence> {
+    const db = await openDatabase();
+
+    const prefix = `computer[${id}]`;
+    const transaction = db.transaction(["files", "blobs"], "readonly");
+    const files = transaction.objectStore("files");
+    const stored = await requestPromise(files.getAll(IDBKeyRange.bound(`${prefix}/`, `${prefix}/\uffff`))) as Array<StoredRecord>;
+
+    // Load any blobs we refer to which haven't been loaded by another computer.
+    const blobs = transaction.objectStore("blobs");
+    const storedBlobs = new Map<string, string>();
+    const missing = new Set<string>();
+    for (const { path, blob } of stored) {
+      if (blob === undefined) continue;
+      storedBlobs.set(path, blob);
+      if (!loadedBlobs.has(blob)) missing.add(blob);
+    }
+    await Promise.all([...missing].map(async hash => {
+      const blob = await requestPromise(blobs.get(hash)) as StoredBlob | undefined;
+      if (blob) loadedBlobs.set(hash, blob.contents);
+    }));
+
+    const entries = new Map<string, StoredEntry>();
+    for (const { blob, ...entry } of stored) {
+      if (blob !== undefined) {
+        const contents = loadedBlobs.get(blob);
+        if (contents === undefined) console.error(`Missing contents for "${entry.path}"`);
+        entry.contents = contents ?? empty;
+        if (contents !== undefined) useBlob(blob, contents);
+      }
+      entries.set(entry.path, entry);
+    }
+
+    const persistance = new IndexedDbPersistence(db, id, entries, storedBlobs);
+    for (const { path, contents } of entries.values()) {
+      if (contents !== undefined) persistance.packed.add(path);
+    }
+    if (stored.length === 0) persistance.migrate(new CompressedPersistence(new StoragePersistence(id)));
+    return persistance;
+  }
+
+  /**
+   * Copy all files from another persistance instance, removing them from the original once they have been saved.
+   */
+  private migrate(old: ComputerPersistance): void {
+    const migrated: Array<string> = [];
+    const queue = [""];
+    while (true) {
+      const path = queue.pop();
+      if (path === undefined) break;
+
+      const children = old.getChildren(path);
+      if (children !== null) {
+        this.setChildren(path, children);
+        for (const child of children) queue.push(path === "" ? child : `${path}/${child}`);
+      } else if (path !== "") {
+        this.setContents(path, old.getContents(path));
+      } else {
+        // There's nothing to migrate.
+        return;
+      }
+
+      const attributes = old.getAttributes(path);
+      if (attributes !== null) this.setAttributes(path, attributes);
+      migrated.push(path);
+    }
+
+    this.afterFlush = () => {
+      for (const path of migrated) {
+        old.removeContents(path);
+        old.removeChildren(path);
+        old.removeAttributes(path);
+      }
+    };
+  }
+
+  private get(path: string): StoredEntry {
+    let entry = this.entries.get(path);
+    if (entry === undefined) {
+      entry = { path };
+      this.entries.set(path, entry);
+    }
+    return entry;
+  }
+
+  private update(path: string): void {
+    const entry = this.entries.get(path);
+    if (entry && entry.contents === undefined && entry.children === undefined && entry.attributes === undefined) {
+      this.entries.delete(path);
+    }
+
+    this.dirty.add(path);
+    if (this.flushScheduled) return;
+
+    this.flushScheduled = true;
+    setTimeout(() => this.flush(), 0);
+  }
+
+  private flush(): void {
+    this.flushScheduled = false;
+
+    // Take a copy of each changed entry now, as they may be modified again while we're hashing them.
+    const changed = [...this.dirty].map((path): [string, StoredEntry | null] => {
+      const entry = this.entries.get(path);
+      if (!entry) return [path, null];
+
+      // Blobs are keyed by the uncompressed contents, so decompress any file which is still packed (such as one which
+      // has been moved). Files being appended to are a view into a larger buffer, which IndexedDB would store in full,
+      // so copy just the file's contents.
+      const copy = { ...entry };
+      const contents = entry.contents === undefined ? undefined : this.getContents(path);
+      if (contents) copy.contents = contents.byteLength === contents.buffer.byteLength ? contents : contents.slice();
+      return [path, copy];
+    });
+    this.dirty.clear();
+
+    const afterFlush = this.afterFlush;
+    this.afterFlush = null;
+
+    // Hashing is asynchronous, so make sure each flush is written in order.
+    this.flushing = this.flushing
+      .then(() => this.write(changed))
+      .then(() => afterFlush?.())
+      .catch(e => console.error("Error writing to IndexedDB", e));
+  }
+
+  private async write(changed: Array<[string, StoredEntry | null]>): Promise<void> {
+    const hashes = await Promise.all(changed.map(([, entry]) =>
+      entry && entry.contents && entry.contents.length >= blobThreshold ? hashContents(entry.contents) : null));
+
+    const transaction = this.db.transaction(["files", "blobs"], "readwrite");
+    const files = transaction.objectStore("files");
+
+    // Work out how each blob's reference count changes. This is done up front (rather than updating each blob as we go),
+    // as blobs may be referenced multiple times within one flush.
+    const refChanges = new Map<string, { delta: number, contents: Int8Array | null }>();
+    const changeRefs = (hash: string, delta: number, contents: Int8Array | null): void => {
+      const existing = refChanges.get(hash);
+      if (existing) {
+        existing.delta += delta;
+        existing.contents ??= contents;
+      } else {
+        refChanges.set(hash, { delta, contents });
+      }
+    };
+
+    // Which blob each path refers to once this transaction has been committed. We only apply these once the transaction
+    // succeeds, so that storedBlobs always matches the database.
+    const blobChanges: Array<{ path: string, previous: string | undefined, hash: string | null, contents: Int8Array | null }> = [];
+
+    changed.forEach(([path, entry], i) => {
+      const hash = hashes[i];
+      const previous = this.storedBlobs.get(path);
+
+      // Only compress the contents if we're going to store them, rather than reusing an existing blob.
+      const contents = entry?.contents && (hash === null || previous !== hash) ? compressContents(entry.contents) : null;
+
+      if (previous !== hash) {
+        if (previous !== undefined) changeRefs(previous, -1, null);
+        if (hash !== null && contents) changeRefs(hash, 1, contents);
+        blobChanges.push({ path, previous, hash, contents });
+      }
+
+      const key = `${this.prefix}/${path}`;
+      if (!entry) {
+        files.delete(key);
+      } else if (hash !== null) {
+        const record: StoredRecord = { ...entry, blob: hash };
+        delete record.contents;
+        files.put(record, key);
+      } else {
+        files.put(contents ? { ...entry, contents } : entry, key);
+      }
+    });
+
+    const blobs = transaction.objectStore("blobs");
+    for (const [hash, { delta, contents }] of refChanges) {
+      if (delta === 0) continue;
+
+      const request = blobs.get(hash);
+      request.onsuccess = () => {
+        const existing = request.result as StoredBlob | undefined;
+        const refs = (existing?.refs ?? 0) + delta;
+        const blobContents = existing?.contents ?? contents;
+        if (refs > 0 && blobContents) {
+          const blob: StoredBlob = { contents: blobContents, refs };
+          blobs.put(blob, hash);
+        } else {
+          blobs.delete(hash);
+        }
+      };
+    }
+
+    await transactionPromise(transaction);
+
+    for (const { path, previous, hash, contents } of blobChanges) {
+      if (previous !== undefined) releaseBlob(previous);
+      if (hash === null) {
+        this.storedBlobs.delete(path);
+      } else {
+        this.storedBlobs.set(path, hash);
+        if (contents) useBlob(hash, contents);
+      }
+    }
+  }
+
+  public getLabel(): string | null {
+    return storage.get(`${this.prefix}.label`);
+  }
+
+  public setLabel(label: string | null): void {
+    if (label === null) {
+      storage.remove(`${this.prefix}.label`);
+    } else {
+      storage.set(`${this.prefix}.label`, label);
+    }
+  }
+
+  public getContents(path: string): Int8Array {
+    const entry = this.entries.get(path);
+    if (!entry?.contents) return empty;
+
+    if (this.packed.delete(path)) entry.contents = decompressContents(path, entry.contents);
+    return entry.contents;
+  }
+
+  public setContents(path: string, contents: Int8Array): void {
+    this.get(path).contents = contents;
+    this.packed.delete(path);
+    this.update(path);
+  }
+
+  public removeContents(path: string): void {
+    const entry = this.entries.get(path);
+    if (!entry) return;
+    delete entry.contents;
+    this.packed.delete(path);
+    this.update(path);
+  }
+
+  public getChildren(path: string): Array<string> | null {
+    return this.entries.get(path)?.children ?? null;
+  }
+
+  public setChildren(path: string, children: Array<string>): void {
+    this.get(path).children = children;
+    this.update(path);
+  }
+
+  public removeChildren(path: string): void {
+    const entry = this.entries.get(path);
+    if (!entry) return;
+    delete entry.children;
+    this.update(path);
+  }
+
+  public getAttributes(path: string): BasicAttributes | null {
+    return this.entries.get(path)?.attributes ?? null;
+  }
+
+  public setAttributes(path: string, attributes: BasicAttributes): void {
+    this.get(path).attributes = { ...attributes };
+    this.update(path);
+  }
+
+  public removeAttributes(path: string): void {
+    const entry = this.entries.get(path);
+    if (!entry) return;
+    delete entry.attributes;
+    this.update(path);
+  }
+
+  public moveEntry(from: string, to: string): void {
+    const entry = this.entries.get(from);
+    if (!entry) return;
+
+    this.entries.delete(from);
+    this.entries.set(to, { ...entry, path: to });
+    if (this.packed.delete(from)) this.packed.add(to);
+    this.update(from);
+    this.update(to);
+  }
+}
+
+/**
+ * Load the persistance instance for a computer, preferring IndexedDB when it is available.
+ *
+ * @param id The computer's ID.
+ * @return The loaded persistance instance.
+ */
+export const loadPersistence = async (id: number): Promise<ComputerPersistance> => {
+  if (typeof indexedDB !== "undefined") {
+    try {
+      return await IndexedDbPersistence.open(id);
+    } catch (e) {
+      console.error("Cannot open IndexedDB, falling back to localStorage.", e);
+    }
+  }
+
+  return new CompressedPersistence(new StoragePersistence(id));
+};
@@ -0,0 +1,72 @@
+import type { ComputerHandle, ComputerTime, EventStats, MemoryStats, MetricSnapshot, TickStats } from "../java";
+import type { FileChange, StoredEntry } from "./persist";
+
+/**
+ * The methods on {@link ComputerHandle} which can be forwarded to the worker. We cannot get a value back from the
+ * worker synchronously, so any return values are discarded.
+ */
+type ForwardedMethods = Omit<
+  ComputerHandle,
+  "getTickStats" | "getComputerTime" | "getEventStats" | "getMemoryStats" | "getProfile" | "startRecording" | "stopRecording"
+>;
+
+/**
+ * A single call to a {@link ComputerHandle}, to be forwarded to the worker.
+ */
+export type HandleCall = {
+  [K in keyof ForwardedMethods]: { method: K, args: Parameters<ForwardedMethods[K]> }
+}[keyof ForwardedMethods];
+
+export type ConfigValue = string | number | boolean;
+
+/**
+ * A config property declared by the computer inside the worker.
+ */
+export type ConfigDefinition = {
+  group: string,
+  groupDescription: string | null,
+  id: string,
+  name: string,
+  description: string,
+} & (
+  | { type: "string", def: string }
+  | { type: "boolean", def: boolean }
+  | { type: "int", def: number, min: number, max: number }
+);
+
+/**
+ * Messages sent from the page to a computer running inside a worker (see `worker.ts`).
+ *
+ * Calls to the computer are batched, so we send at most one message per task, rather than one for every call.
+ */
+export type ToWorker
+  = { kind: "init", base: string, files: Array<StoredEntry>, label: string | null }
+  | { kind: "batch", changes: Array<FileChange>, calls: Array<HandleCall> }
+  | { kind: "config", id: string, value: ConfigValue };
+
+/**
+ * Changes sent from the worker to the page.
+ */
+export type WorkerUpdate = {
+  /** Every terminal frame sent since the last update. Frames only contain the parts of the terminal which changed, so
+   *  must all be applied in order. */
+  frames: Array<Int8Array>,
+  state: { label: string | null, on: boolean } | null,
+  changes: Array<FileChange>,
+  config: Array<ConfigDefinition>,
+  stats: {
+    tick: TickStats, time: ComputerTime, events: EventStats, memory: MemoryStats, metrics: Array<MetricSnapshot>,
+    /** The current profile, or `null` if it has not changed since the last update. */
+    profile: string | null,
+  } | null,
+};
+
+/**
+ * Messages sent from the worker to the page (see `remote.ts`).
+ *
+ * Like {@link ToWorker}, these are batched, so we send at most one update per tick.
+ */
+export type FromWorker
+  = { kind: "ready" }
+  | { kind: "failed", error: string }
+  | ({ kind: "update" } & WorkerUpdate);
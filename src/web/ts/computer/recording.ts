@@ -0,0 +1,71 @@
+import { decode, encode } from "../files/encode";
+import type { RecordedInput } from "../java";
+import type { StoredEntry } from "./persist";
+
+/**
+ * A recording of the input sent to a computer, which can be replayed to reproduce its behaviour (see `replay` in
+ * `headless.ts`).
+ *
+ * Replays are deterministic as long as the program only depends on its input and the in-game clock. Programs which
+ * use the real time (such as `os.epoch("utc")` or `os.clock()`) or random numbers may behave differently.
+ */
+export type Recording = {
+  version: 1,
+  /** The tick the recording was started on. The clock is set to this when replaying, so the time of day matches. */
+  startTick: number,
+  /** The size of the computer's terminal. */
+  width: number,
+  height: number,
+  label: string | null,
+  /** The computer's file system when the recording was started. */
+  files: Array<StoredEntry>,
+  /** Every call made to the computer, in order. */
+  inputs: Array<RecordedInput>,
+  /**
+   * The files changed outside the computer (such as by the editor), one for each `filesChanged` input. Each change
+   * holds the changed entry and its children, or no entries if it was deleted.
+   */
+  fileChanges: Array<{ path: string, entries: Array<StoredEntry> }>,
+};
+
+type EncodedBytes = { $bytes: string };
+
+const isEncodedBytes = (value: unknown): value is EncodedBytes =>
+  typeof value === "object" && value !== null && typeof (value as EncodedBytes).$bytes === "string";
+
+/**
+ * Convert a recording to a string. File contents (both in the file system and in any transferred files) are stored
+ * as base64.
+ *
+ * @param recording The recording to save.
+ * @return The saved recording.
+ */
+export const saveRecording = (recording: Recording): string => JSON.stringify(recording, (_key, value: unknown) => {
+  if (value instanceof ArrayBuffer) return { $bytes: encode(value) };
+  if (ArrayBuffer.isView(value)) return { $bytes: encode(new Uint8Array(value.buffer, value.byteOffset, value.byteLength)) };
+  return value;
+});
+
+/**
+ * Load a recording saved with {@link saveRecording}.
+ *
+ * @param contents The saved recording.
+ * @return The loaded recording.
+ * @throws If this is not a recording, or was saved by a newer version.
+ */
+export const loadRecording = (contents: string): Recording => {
+  const recording = JSON.parse(contents, (_key, value: unknown) => isEncodedBytes(value) ? decode(value.$bytes) : value) as Recording;
+  if (typeof recording !== "object" || recording === null || recording.version !== 1) {
+    throw new Error("Not a recording, or an unsupported version");
+  }
+
+  // Transferred files are passed to the computer as ArrayBuffers, but file contents are stored as Int8Arrays.
+  const files = [recording.files, ...recording.fileChanges.map(x => x.entries)];
+  for (const entries of files) {
+    for (const file of entries) {
+      if (file.contents) file.contents = new Int8Array(file.contents as unknown as ArrayBuffer);
+    }
+  }
+
+  return recording;
+};
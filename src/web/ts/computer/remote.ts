@@ -0,0 +1,259 @@
+import requirejs from "require";
+import type {
+  ComputerHandle, ComputerTime, ConfigFactory, EventStats, MemoryStats, MetricSnapshot, RecordedInput, TickStats
+} from "../java";
+import type { ComputerAccess } from "./access";
+import type { ConfigDefinition, ConfigValue, FromWorker, HandleCall, ToWorker, WorkerUpdate } from "./protocol";
+
+/**
+ * A computer handle which forwards every call to a computer running inside a worker.
+ */
+class RemoteComputerHandle implements ComputerHandle {
+  private readonly worker: Worker;
+  private readonly computer: ComputerAccess;
+
+  private calls: Array<HandleCall> = [];
+  private transfer: Array<Transferable> = [];
+  private flushScheduled: boolean = false;
+
+  private tickStats: TickStats = { ticks: 0, lateTicks: 0, droppedTicks: 0, lastTickTime: 0 };
+  private computerTime: ComputerTime = { totalTime: 0, lastTickTime: 0, averageTickTime: 0, deferredTicks: 0 };
+  private eventStats: EventStats = { queued: 0, coalesced: 0, dropped: 0 };
+  private memoryStats: MemoryStats = { usage: 0, peak: 0, limit: 0 };
+  private metrics: Array<MetricSnapshot> = [];
+  private profile: string = "";
+
+  public constructor(worker: Worker, computer: ComputerAccess) {
+    this.worker = worker;
+    this.computer = computer;
+  }
+
+  private call(call: HandleCall, transfer?: Array<Transferable>): void {
+    this.calls.push(call);
+    if (transfer) this.transfer.push(...transfer);
+
+    if (this.flushScheduled) return;
+    this.flushScheduled = true;
+    Promise.resolve().then(this.flush).catch(e => console.error(e));
+  }
+
+  private flush = (): void => {
+    this.flushScheduled = false;
+
+    // Send any changes to the file system along with the calls, so the worker's copy is up-to-date before (for
+    // instance) filesChanged is called.
+    const message: ToWorker = { kind: "batch", changes: this.computer.takeFileChanges(), calls: this.calls };
+    this.worker.postMessage(message, this.transfer);
+    this.calls = [];
+    this.transfer = [];
+  };
+
+  public update({ stats }: WorkerUpdate): void {
+    if (stats) {
+      this.tickStats = stats.tick;
+      this.computerTime = stats.time;
+      this.eventStats = stats.events;
+      this.memoryStats = stats.memory;
+      this.metrics = stats.metrics;
+      if (stats.profile !== null) this.profile = stats.profile;
+    }
+  }
+
+  public event(...args: Parameters<ComputerHandle["event"]>): void {
+    this.call({ method: "event", args });
+  }
+
+  public events(...args: Parameters<ComputerHandle["events"]>): void {
+    this.call({ method: "events", args });
+  }
+
+  public shutdown(): void {
+    this.call({ method: "shutdown", args: [] });
+  }
+
+  public turnOn(): void {
+    this.call({ method: "turnOn", args: [] });
+  }
+
+  public reboot(): void {
+    this.call({ method: "reboot", args: [] });
+  }
+
+  public dispose(): void {
+    // The worker closes itself once the computer has been disposed of.
+    this.call({ method: "dispose", args: [] });
+  }
+
+  public transferFiles(...args: Parameters<ComputerHandle["transferFiles"]>): void {
+    // The files' contents are only used by the computer, so transfer them rather than copying.
+    this.call({ method: "transferFiles", args }, args[0].map(x => x.contents));
+  }
+
+  public setPeripheral(...args: Parameters<ComputerHandle["setPeripheral"]>): void {
+    this.call({ method: "setPeripheral", args });
+  }
+
+  public addFile(...args: Parameters<ComputerHandle["addFile"]>): void {
+    this.call({ method: "addFile", args });
+  }
+
+  public setLabel(...args: Parameters<ComputerHandle["setLabel"]>): void {
+    this.call({ method: "setLabel", args });
+  }
+
+  public resize(...args: Parameters<ComputerHandle["resize"]>): void {
+    this.call({ method: "resize", args });
+  }
+
+  public setVisible(...args: Parameters<ComputerHandle["setVisible"]>): void {
+    this.call({ method: "setVisible", args });
+  }
+
+  public redrawTerminal(): void {
+    this.call({ method: "redrawTerminal", args: [] });
+  }
+
+  public filesChanged(...args: Parameters<ComputerHandle["filesChanged"]>): void {
+    this.call({ method: "filesChanged", args });
+  }
+
+  public getTickStats(): TickStats {
+    return this.tickStats;
+  }
+
+  public getEventStats(): EventStats {
+    return this.eventStats;
+  }
+
+  public getComputerTime(): ComputerTime {
+    return this.computerTime;
+  }
+
+  public getMemoryStats(): MemoryStats {
+    return this.memoryStats;
+  }
+
+  public startProfiler(...args: Parameters<ComputerHandle["startProfiler"]>): void {
+    this.profile = "";
+    this.call({ method: "startProfiler", args });
+  }
+
+  public stopProfiler(): string {
+    // Like metrics, the profile is sent from the worker every second, and so will be missing the most recent samples.
+    this.call({ method: "stopProfiler", args: [] });
+    return this.profile;
+  }
+
+  public getProfile(): string {
+    return this.profile;
+  }
+
+  public startRecording(): void {
+    // The worker's tick count is not known on this side, so inputs could not be tagged with the tick they arrived on.
+    throw new Error("Cannot record input to a computer running in a worker");
+  }
+
+  public stopRecording(): Array<RecordedInput> {
+    return [];
+  }
+
+  public getMetricsSnapshot(reset: boolean): Array<MetricSnapshot> {
+    // Metrics are sent from the worker every second, so these may be slightly out of date.
+    const metrics = this.metrics;
+    if (reset) {
+      this.metrics = [];
+      this.call({ method: "getMetricsSnapshot", args: [true] });
+    }
+    return metrics;
+  }
+}
+
+/**
+ * Config properties which have already been declared by a worker, and the workers listening to them.
+ *
+ * Each worker declares the same properties, so we only add them to the config group once.
+ */
+const configProperties = new Map<string, { value: ConfigValue | null, listeners: Array<Worker> }>();
+
+const declareConfig = (worker: Worker, config: ConfigFactory, property: ConfigDefinition): void => {
+  const existing = configProperties.get(property.id);
+  if (existing) {
+    existing.listeners.push(worker);
+    if (existing.value !== null) {
+      const message: ToWorker = { kind: "config", id: property.id, value: existing.value };
+      worker.postMessage(message);
+    }
+    return;
+  }
+
+  const entry = { value: null as ConfigValue | null, listeners: [worker] };
+  configProperties.set(property.id, entry);
+
+  const changed = (value: ConfigValue): void => {
+    entry.value = value;
+    const message: ToWorker = { kind: "config", id: property.id, value };
+    for (const listener of entry.listeners) listener.postMessage(message);
+  };
+
+  const group = config(property.group, property.groupDescription);
+  switch (property.type) {
+    case "string":
+      group.addString(property.id, property.name, property.def, property.description, changed);
+      break;
+    case "boolean":
+      group.addBoolean(property.id, property.name, property.def, property.description, changed);
+      break;
+    case "int":
+      group.addInt(property.id, property.name, property.def, property.min, property.max, property.description, changed);
+      break;
+  }
+};
+
+/**
+ * Start a computer inside a worker, rather than on the page's main thread. This means long-running Lua code does not
+ * block the page, and so the terminal and editor stay responsive.
+ *
+ * The worker has its own copy of the computer's file system. Changes made on either side are recorded and sent to the
+ * other, though the page's copy is the only one which is saved.
+ *
+ * @param computer The display for this computer.
+ * @param config   The factory for config groups.
+ * @return The handle for the computer inside the worker.
+ */
+export const startWorker = (computer: ComputerAccess, config: ConfigFactory): Promise<ComputerHandle> => new Promise((resolve, reject) => {
+  // Resolve the worker relative to this script, rather than the current page (see embed.tsx).
+  const url = new URL(requirejs.toUrl("./worker.js"), document.baseURI).href;
+
+  // Workers must be loaded from the same origin as the page, which is not the case when the emulator is embedded on
+  // another site. Instead, we create the worker from a small script which then imports the real one.
+  const loaderUrl = URL.createObjectURL(new Blob([`importScripts(${JSON.stringify(url)});`], { type: "text/javascript" }));
+  const worker = new Worker(loaderUrl);
+  const handle = new RemoteComputerHandle(worker, computer);
+
+  worker.addEventListener("message", (event: MessageEvent<FromWorker>) => {
+    const message = event.data;
+    switch (message.kind) {
+      case "ready":
+        URL.revokeObjectURL(loaderUrl);
+        resolve(handle);
+        break;
+      case "failed":
+        URL.revokeObjectURL(loaderUrl);
+        worker.terminate();
+        reject(new Error(message.error));
+        break;
+      case "update": {
+        for (const property of message.config) declareConfig(worker, config, property);
+        if (message.changes.length > 0) computer.applyFileChanges(message.changes);
+        for (const frame of message.frames) computer.updateTerminalFrame(frame, frame.length);
+        if (message.state) computer.setState(message.state.label, message.state.on);
+        handle.update(message);
+        break;
+      }
+    }
+  });
+  worker.addEventListener("error", e => reject(new Error(e.message)));
+
+  const init: ToWorker = { kind: "init", base: url, files: computer.snapshotFileSystem(), label: computer.getLabel() };
+  worker.postMessage(init);
+});
@@ -2,7 +2,7 @@ import { Component, type VNode, h, render } from "preact";
 import { Semaphore, Terminal, TerminalData } from "@squid-dev/cc-web-term";
 import type { ConfigGroup, PeripheralKind, Side } from "./java";
 import { ComputerAccess, splitName } from "./computer/access";
-import { StoragePersistence, VoidPersistence } from "./computer/persist";
+import { type ComputerPersistance, StoragePersistence, VoidPersistence, loadPersistence } from "./computer/persist";
 import termFont from "@squid-dev/cc-web-term/assets/term_font.png";
 import termFontHd from "@squid-dev/cc-web-term/assets/term_font_hd.png";
 import requirejs from "require";
@@ -16,6 +16,8 @@ type MainProps = {
   height?: number,
   resolve?: (computer: ComputerAccess) => void,
   peripherals?: Partial<Record<Side, PeripheralKind | null>>,
+  persistence?: ComputerPersistance,
+  worker?: boolean,
 }
 
 type MainState = {
@@ -37,13 +39,13 @@ class Computer extends Component<MainProps, MainState> {
   public constructor(props: MainProps, context: unknown) {
     super(props, context);
 
-    const { persistId, hdFont } = props;
+    const { persistId, persistence, hdFont } = props;
 
     const terminal = new TerminalData();
     const terminalChanged = new Semaphore();
 
     const computer = new ComputerAccess(
-      persistId === undefined ? new VoidPersistence() : new StoragePersistence(persistId),
+      persistence ?? (persistId === undefined ? new VoidPersistence() : new StoragePersistence(persistId)),
       terminal, terminalChanged,
       (label, on) => this.setState({ label, on }),
     );
@@ -106,9 +108,13 @@ class Computer extends Component<MainProps, MainState> {
   }
 }
 
-const exported = (element: HTMLElement, options?: MainProps): Promise<ComputerAccess> => {
+const exported = async (element: HTMLElement, options?: MainProps): Promise<ComputerAccess> => {
+  const persistId = options?.persistId;
+  const persistence = options?.persistence ??
+    (persistId === undefined ? new VoidPersistence() : await loadPersistence(persistId));
+
   return new Promise((resolve, _) =>
-    render(<Computer resolve={resolve} {...(options ?? {})} />, element));
+    render(<Computer resolve={resolve} {...(options ?? {})} persistence={persistence} />, element));
 };
 
 export default exported;
@@ -0,0 +1,216 @@
+/*
+ * A small, synchronous decoder for raw deflate streams (RFC 1951).
+ *
+ * Files are compressed by the emulator (see FileCompression.java), but need to be readable before the emulator has
+ * loaded, or when it is running inside a worker. The browser's DecompressionStream is asynchronous, which does not fit
+ * with file contents being loaded on demand.
+ */
+
+type Tree = { counts: Uint16Array, symbols: Uint16Array };
+
+const lengthBase = [3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258];
+const lengthExtra = [0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0];
+const distanceBase = [
+  1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145,
+  8193, 12289, 16385, 24577,
+];
+const distanceExtra = [0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13];
+
+// The order code length code lengths are stored in.
+const codeLengthOrder = [16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15];
+
+/**
+ * Build a canonical Huffman tree from a list of code lengths.
+ */
+const buildTree = (lengths: ArrayLike<number>, offset: number, count: number): Tree => {
+  const counts = new Uint16Array(16);
+  const symbols = new Uint16Array(count);
+  for (let i = 0; i < count; i++) counts[lengths[offset + i]]++;
+  counts[0] = 0;
+
+  const offsets = new Uint16Array(16);
+  for (let i = 1, total = 0; i < 16; i++) {
+    offsets[i] = total;
+    total += counts[i];
+  }
+
+  for (let i = 0; i < count; i++) {
+    const length = lengths[offset + i];
+    if (length !== 0) symbols[offsets[length]++] = i;
+  }
+
+  return { counts, symbols };
+};
+
+const fixedLengths = new Uint8Array(288 + 30);
+fixedLengths.fill(8, 0, 144);
+fixedLengths.fill(9, 144, 256);
+fixedLengths.fill(7, 256, 280);
+fixedLengths.fill(8, 280, 288);
+fixedLengths.fill(5, 288, 288 + 30);
+const fixedLiterals = buildTree(fixedLengths, 0, 288);
+const fixedDistances = buildTree(fixedLengths, 288, 30);
+
+class Decoder {
+  private readonly input: Uint8Array;
+  private position: number = 0;
+  private bits: number = 0;
+  private bitCount: number = 0;
+
+  private readonly output: Uint8Array;
+  private outPosition: number = 0;
+
+  public constructor(input: Uint8Array, output: Uint8Array) {
+    this.input = input;
+    this.output = output;
+  }
+
+  private readBits(count: number): number {
+    while (this.bitCount < count) {
+      if (this.position >= this.input.length) throw new Error("Unexpected end of compressed data");
+      this.bits |= this.input[this.position++] << this.bitCount;
+      this.bitCount += 8;
+    }
+
+    const value = this.bits & ((1 << count) - 1);
+    this.bits >>>= count;
+    this.bitCount -= count;
+    return value;
+  }
+
+  private readSymbol({ counts, symbols }: Tree): number {
+    // Huffman codes are stored most-significant bit first, so have to be read one bit at a time.
+    let code = 0, first = 0, index = 0;
+    for (let length = 1; length < 16; length++) {
+      code |= this.readBits(1);
+      const count = counts[length];
+      if (code - first < count) return symbols[index + code - first];
+
+      index += count;
+      first = (first + count) << 1;
+      code <<= 1;
+    }
+
+    throw new Error("Invalid Huffman code");
+  }
+
+  private writeByte(value: number): void {
+    if (this.outPosition >= this.output.length) throw new Error("Decompressed data is larger than expected");
+    this.output[this.outPosition++] = value;
+  }
+
+  private readStored(): void {
+    // Discard any remaining bits in the current byte.
+    this.bits = 0;
+    this.bitCount = 0;
+
+    if (this.position + 4 > this.input.length) throw new Error("Unexpected end of compressed data");
+    const length = this.input[this.position] | (this.input[this.position + 1] << 8);
+    this.position += 4;
+
+    if (this.position + length > this.input.length) throw new Error("Unexpected end of compressed data");
+    if (this.outPosition + length > this.output.length) throw new Error("Decompressed data is larger than expected");
+    this.output.set(this.input.subarray(this.position, this.position + length), this.outPosition);
+    this.position += length;
+    this.outPosition += length;
+  }
+
+  private readDynamicTrees(): [Tree, Tree] {
+    const literalCount = this.readBits(5) + 257;
+    const distanceCount = this.readBits(5) + 1;
+    const codeLengthCount = this.readBits(4) + 4;
+
+    const codeLengths = new Uint8Array(19);
+    for (let i = 0; i < codeLengthCount; i++) codeLengths[codeLengthOrder[i]] = this.readBits(3);
+    const codeLengthTree = buildTree(codeLengths, 0, 19);
+
+    const lengths = new Uint8Array(literalCount + distanceCount);
+    for (let i = 0; i < lengths.length;) {
+      const symbol = this.readSymbol(codeLengthTree);
+      let value = 0, repeat = 1;
+      switch (symbol) {
+        case 16:
+          if (i === 0) throw new Error("Invalid code length repeat");
+          value = lengths[i - 1];
+          repeat = 3 + this.readBits(2);
+          break;
+        case 17:
+          repeat = 3 + this.readBits(3);
+          break;
+        case 18:
+          repeat = 11 + this.readBits(7);
+          break;
+        default:
+          value = symbol;
+          break;
+      }
+
+      if (i + repeat > lengths.length) throw new Error("Invalid code lengths");
+      lengths.fill(value, i, i + repeat);
+      i += repeat;
+    }
+
+    return [buildTree(lengths, 0, literalCount), buildTree(lengths, literalCount, distanceCount)];
+  }
+
+  private readCompressed(literals: Tree, distances: Tree): void {
+    while (true) {
+      const symbol = this.readSymbol(literals);
+      if (symbol < 256) {
+        this.writeByte(symbol);
+        continue;
+      }
+      if (symbol === 256) return;
+
+      const lengthSymbol = symbol - 257;
+      if (lengthSymbol >= lengthBase.length) throw new Error("Invalid length code");
+      const length = lengthBase[lengthSymbol] + this.readBits(lengthExtra[lengthSymbol]);
+
+      const distanceSymbol = this.readSymbol(distances);
+      if (distanceSymbol >= distanceBase.length) throw new Error("Invalid distance code");
+      const distance = distanceBase[distanceSymbol] + this.readBits(distanceExtra[distanceSymbol]);
+      if (distance > this.outPosition) throw new Error("Invalid distance");
+
+      // Copy byte-by-byte, as the source and destination may overlap.
+      for (let i = 0; i < length; i++) this.writeByte(this.output[this.outPosition - distance]);
+    }
+  }
+
+  public decode(): void {
+    while (true) {
+      const final = this.readBits(1);
+      const type = this.readBits(2);
+      switch (type) {
+        case 0:
+          this.readStored();
+          break;
+        case 1:
+          this.readCompressed(fixedLiterals, fixedDistances);
+          break;
+        case 2:
+          this.readCompressed(...this.readDynamicTrees());
+          break;
+        default:
+          throw new Error("Invalid block type");
+      }
+
+      if (final) break;
+    }
+
+    if (this.outPosition !== this.output.length) throw new Error("Decompressed data is smaller than expected");
+  }
+}
+
+/**
+ * Decompress a raw deflate stream.
+ *
+ * @param input  The compressed data.
+ * @param length The length of the decompressed data.
+ * @return The decompressed data.
+ * @throws If the data is malformed, or does not decompress to exactly `length` bytes.
+ */
+export const inflate = (input: Uint8Array, length: number): Uint8Array => {
+  const output = new Uint8Array(length);
+  new Decoder(input, output).decode();
+  return output;
+};
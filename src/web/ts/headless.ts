@@ -0,0 +1,340 @@
+/*
+ * Runs computers outside of a browser, such as on a CI server. This is built to a separate module, which is driven by
+ * tools/headless.js.
+ */
+import { FileSystem, type FileSystemEntry } from "./computer/filesystem";
+import { readTerminalFrame } from "./computer/frame";
+import { MemoryPersistence, type StoredEntry } from "./computer/persist";
+import type { Recording } from "./computer/recording";
+export { loadRecording } from "./computer/recording";
+import {
+  type ComputerDisplay, type ComputerHandle, type ConfigFactory, type ConfigGroup, type Result, getTickControl,
+  preferJavascriptRuntime, start
+} from "./java";
+
+export type HeadlessOptions = {
+  /** The Lua program to run. */
+  script: string,
+  /** The number of computers to run the program on at once. */
+  computers: number,
+  /** How long to wait for each computer to finish, in milliseconds. */
+  timeout: number,
+  /** Overrides for config properties, keyed by the property's ID. */
+  config: Record<string, string>,
+  /** If given, profile each computer's Lua code, taking a sample every this many instructions. */
+  profile?: number,
+  /** Called once each computer has been started, such as to queue events on it. */
+  onStart?: (computer: HeadlessComputer) => void,
+};
+
+/**
+ * A computer started by {@link run}.
+ */
+export type HeadlessComputer = {
+  id: number,
+  handle: ComputerHandle,
+  /** Check whether a file exists on this computer. This can be used to wait for the program to reach some point. */
+  exists(path: string): boolean,
+};
+
+export type HeadlessResult = {
+  id: number,
+  status: "ok" | "error" | "timeout",
+  /** The error thrown by the program, if it failed. */
+  error: string | null,
+  /** How long the computer took to run, in milliseconds. */
+  time: number,
+  /** How many ticks the computer took to run. */
+  ticks: number,
+  /** How many of those ticks were run late or skipped entirely. */
+  lateTicks: number,
+  droppedTicks: number,
+  /** The time spent ticking this computer, in milliseconds. */
+  tickTime: number,
+  /** The number of terminal frames sent, and their total size in bytes. */
+  frames: number,
+  frameBytes: number,
+  /** The contents of `.headless/output.json`, if the program wrote it. This can be used to report measurements. */
+  output: unknown,
+  /** The computer's profile, in the folded format used by flame graph tools, if profiling was enabled. */
+  profile: string | null,
+  /** The contents of the terminal when the computer finished. */
+  terminal: Array<string>,
+};
+
+const scriptPath = "test.lua";
+const resultPath = ".headless/result";
+const outputPath = ".headless/output.json";
+
+// A startup file which runs the program, records whether it succeeded, and then shuts down.
+const startup = `
+local ok, err = pcall(function()
+  local fn, err = loadfile("/${scriptPath}", nil, _ENV)
+  if not fn then error(err, 0) end
+  fn()
+end)
+
+local handle = fs.open("/${resultPath}", "w")
+handle.write(ok and "ok" or "error\\n" .. tostring(err))
+handle.close()
+
+os.shutdown()
+`;
+
+class HeadlessDisplay implements ComputerDisplay {
+  private readonly filesystem: FileSystem;
+
+  private on: boolean = false;
+  private finished: (() => void) | null = null;
+
+  public readonly terminal: Array<string> = [];
+  public frames: number = 0;
+  public frameBytes: number = 0;
+
+  public constructor(files: Array<StoredEntry>, label: string | null) {
+    this.filesystem = new FileSystem(new MemoryPersistence(files, label));
+  }
+
+  /**
+   * Wait for this computer to shut down.
+   */
+  public wait(): Promise<void> {
+    return new Promise(resolve => this.finished = resolve);
+  }
+
+  /**
+   * Get the contents of a file, or `null` if it does not exist.
+   */
+  public readFile(path: string): string | null {
+    const entry = this.filesystem.getEntry(path);
+    return entry && !entry.isDirectory() ? entry.getStringContents() : null;
+  }
+
+  public setState(_label: string | null, on: boolean): void {
+    if (this.on && !on) this.finished?.();
+    this.on = on;
+  }
+
+  // The terminal is sent with updateTerminalFrame instead, so these are never called.
+  public updateTerminal(): void { }
+  public setTerminalLine(): void { }
+  public setPaletteColour(): void { }
+  public flushTerminal(): void { }
+
+  public updateTerminalFrame(frame: Int8Array, length: number): void {
+    this.frames++;
+    this.frameBytes += length;
+    readTerminalFrame(frame, length, {
+      setCursor: (_width, height) => {
+        this.terminal.length = height;
+      },
+      setPaletteColour: () => { },
+      setLine: (line, text) => {
+        this.terminal[line] = text;
+      },
+    });
+  }
+
+  public getEntry(path: string): FileSystemEntry | null {
+    return this.filesystem.getEntry(path);
+  }
+
+  public createDirectory(path: string): Result<FileSystemEntry> {
+    return this.filesystem.createDirectory(path);
+  }
+
+  public createFile(path: string): Result<FileSystemEntry> {
+    return this.filesystem.createFile(path);
+  }
+
+  public deleteEntry(path: string): void {
+    this.filesystem.deleteEntry(path);
+  }
+
+  public moveEntry(source: string, dest: string): Result<true> {
+    return this.filesystem.moveEntry(source, dest);
+  }
+
+  public commitFileSystem(): void {
+  }
+
+  /**
+   * Replace an entry and its children, as changed outside the computer while it was being recorded.
+   */
+  public restoreEntry(path: string, entries: Array<StoredEntry>): void {
+    this.filesystem.restore(path, entries);
+  }
+}
+
+/**
+ * Create config groups which use the given overrides, rather than any saved settings.
+ */
+const createConfig = (overrides: Record<string, string>): ConfigFactory => (): ConfigGroup => {
+  const get = <T>(id: string, def: T, parse: (value: string) => T, changed: (value: T) => void): void => {
+    if (Object.prototype.hasOwnProperty.call(overrides, id)) changed(parse(overrides[id]));
+    else changed(def);
+  };
+
+  return {
+    addString: (id, _name, def, _description, changed) => get(id, def, x => x, changed),
+    addBoolean: (id, _name, def, _description, changed) => get(id, def, x => x === "true", changed),
+    addInt: (id, _name, def, min, max, _description, changed) =>
+      get(id, def, x => Math.min(max, Math.max(min, parseInt(x, 10))), changed),
+  };
+};
+
+const parseOutput = (output: string | null): unknown => {
+  if (output === null) return null;
+  try {
+    return JSON.parse(output);
+  } catch (e) {
+    console.error("Cannot parse program output", e);
+    return null;
+  }
+};
+
+const runComputer = async (id: number, { script, timeout, profile, onStart }: HeadlessOptions, config: ConfigFactory): Promise<HeadlessResult> => {
+  const display = new HeadlessDisplay([], null);
+  display.createFile(scriptPath).value!.setContents(script);
+  display.createFile("startup.lua").value!.setContents(startup);
+  display.createDirectory(".headless");
+  const finished = display.wait();
+
+  const handle = await start(display, config);
+  if (profile !== undefined) handle.startProfiler(profile);
+  const startStats = handle.getTickStats();
+  const startTime = performance.now();
+  onStart?.({ id, handle, exists: path => display.getEntry(path) !== null });
+
+  let timer: ReturnType<typeof setTimeout> | undefined;
+  const timedOut = await Promise.race([
+    finished.then(() => false),
+    new Promise<boolean>(resolve => timer = setTimeout(() => resolve(true), timeout)),
+  ]);
+  clearTimeout(timer);
+
+  const time = performance.now() - startTime;
+  const endStats = handle.getTickStats();
+  const { totalTime: tickTime } = handle.getComputerTime();
+  const profileOutput = profile !== undefined ? handle.stopProfiler() : null;
+  handle.dispose();
+
+  const result = display.readFile(resultPath);
+  const status = timedOut ? "timeout" : result === "ok" ? "ok" : "error";
+  return {
+    id, status, time,
+    error: status !== "error" ? null : result === null ? "Computer shut down without finishing" : result.substring("error\n".length),
+    ticks: endStats.ticks - startStats.ticks,
+    lateTicks: endStats.lateTicks - startStats.lateTicks,
+    droppedTicks: endStats.droppedTicks - startStats.droppedTicks,
+    tickTime,
+    frames: display.frames,
+    frameBytes: display.frameBytes,
+    output: parseOutput(display.readFile(outputPath)),
+    profile: profileOutput,
+    terminal: display.terminal.map(x => x.replace(/\s+$/, "")),
+  };
+};
+
+const setupEnvironment = (): void => {
+  // The runtime expects to be run inside a browser, so provide the bits of the environment it needs.
+  if (typeof self === "undefined") Object.assign(globalThis, { self: globalThis });
+  preferJavascriptRuntime();
+};
+
+/**
+ * Run a Lua program on one or more computers, waiting for them all to finish.
+ *
+ * @param options The options to run the program with.
+ * @return The result of each computer.
+ */
+export const run = async (options: HeadlessOptions): Promise<Array<HeadlessResult>> => {
+  setupEnvironment();
+
+  const config = createConfig(options.config);
+  const results: Array<Promise<HeadlessResult>> = [];
+  for (let i = 0; i < options.computers; i++) results.push(runComputer(i, options, config));
+
+  return Promise.all(results);
+};
+
+export type ReplayOptions = {
+  /** The recording to replay. */
+  recording: Recording,
+  /** The number of ticks to keep running for after the last input. */
+  extraTicks: number,
+  /** Overrides for config properties, keyed by the property's ID. */
+  config: Record<string, string>,
+};
+
+export type ReplayResult = {
+  /** How long each tick took, in milliseconds. */
+  tickTimes: Array<number>,
+  /** The number of terminal frames sent, and their total size in bytes. */
+  frames: number,
+  frameBytes: number,
+  /** The contents of the terminal when the replay finished. */
+  terminal: Array<string>,
+};
+
+/**
+ * Replay a recording of a computer's input (see `computer/recording.ts`).
+ *
+ * Rather than running on a timer, the clock is paused and stepped through one tick at a time, with each input being
+ * sent on the same tick it was originally received. This means the computer sees exactly the same input each time the
+ * recording is replayed, so the timings of two replays can be compared.
+ *
+ * This must not be run at the same time as any other computers, as they would also be ticked by the replay.
+ *
+ * @param options The options to replay the recording with.
+ * @return The timings and final terminal of the replay.
+ */
+export const replay = async ({ recording, extraTicks, config }: ReplayOptions): Promise<ReplayResult> => {
+  setupEnvironment();
+
+  const display = new HeadlessDisplay(recording.files, recording.label);
+  const handle = await start(display, createConfig({
+    ...config,
+    "terminal.width": recording.width.toString(),
+    "terminal.height": recording.height.toString(),
+  }));
+
+  // start() returns before any timers run, so the computer has not been ticked yet.
+  const clock = getTickControl()!;
+  clock.pause();
+  clock.setTicks(recording.startTick);
+
+  const inputs = [...recording.inputs].sort((a, b) => a.tick - b.tick);
+  const lastTick = inputs.length > 0 ? inputs[inputs.length - 1].tick : 0;
+
+  const tickTimes: Array<number> = [];
+  try {
+    let next = 0;
+    let nextChange = 0;
+    for (let tick = 0; tick <= lastTick + extraTicks; tick++) {
+      for (; next < inputs.length && inputs[next].tick === tick; next++) {
+        const { method, args } = inputs[next];
+        if (method === "filesChanged" && nextChange < recording.fileChanges.length) {
+          const { path, entries } = recording.fileChanges[nextChange++];
+          display.restoreEntry(path, entries);
+        }
+
+        (handle[method as keyof ComputerHandle] as (...args: Array<unknown>) => unknown).apply(handle, args);
+      }
+
+      tickTimes.push(clock.step());
+    }
+
+    handle.dispose();
+    clock.step();
+  } finally {
+    clock.resume();
+  }
+
+  return {
+    tickTimes,
+    frames: display.frames,
+    frameBytes: display.frameBytes,
+    terminal: display.terminal.map(x => x.replace(/\s+$/, "")),
+  };
+};
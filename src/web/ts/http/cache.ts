@@ -0,0 +1,285 @@
+/*
+ * A private HTTP cache for requests made by computers, following the parts of RFC 9111 which matter for fetching
+ * scripts: freshness from Cache-Control/Expires (or a heuristic based on Last-Modified), and revalidation with
+ * ETag/Last-Modified.
+ */
+
+export type HttpHeaders = Array<[string, string]>;
+
+/**
+ * A request made through the {@link HttpCache}.
+ */
+export type HttpRequest = {
+  method: string,
+  url: string,
+  headers: HttpHeaders,
+  body: ArrayBuffer | null,
+};
+
+/**
+ * A response, either received from the network or served from the {@link HttpCache}.
+ */
+export type HttpResponse = {
+  /** The URL this response came from, after following any redirects. */
+  url: string,
+  status: number,
+  statusText: string,
+  headers: HttpHeaders,
+  body: ArrayBuffer,
+};
+
+/**
+ * Sends a request over the network.
+ */
+export type HttpTransport = (request: HttpRequest) => Promise<HttpResponse>;
+
+type CacheEntry = {
+  response: HttpResponse,
+  /** When this response stops being fresh, as a timestamp in milliseconds. */
+  expires: number,
+  /** Whether this response must be revalidated before being used, even if it is fresh. */
+  noCache: boolean,
+  etag: string | null,
+  lastModified: string | null,
+  size: number,
+};
+
+/** The longest a response is considered fresh for when it has no explicit expiry time, in milliseconds. */
+const maxHeuristicFreshness = 5 * 60 * 1000;
+
+/** Responses which can be cached without an explicit expiry time. */
+const cacheableStatuses = new Set([200, 203, 204, 300, 301, 404, 405, 410, 414, 501]);
+
+const getHeader = (headers: HttpHeaders, name: string): string | null => {
+  const lowerName = name.toLowerCase();
+  for (const [key, value] of headers) {
+    if (key.toLowerCase() === lowerName) return value;
+  }
+  return null;
+};
+
+/**
+ * Parse a Cache-Control header into its directives. Each directive is mapped to its value, or the empty string if it
+ * has none.
+ */
+const parseCacheControl = (header: string | null): Map<string, string> => {
+  const directives = new Map<string, string>();
+  if (header === null) return directives;
+
+  for (const directive of header.split(",")) {
+    const index = directive.indexOf("=");
+    const name = (index < 0 ? directive : directive.substring(0, index)).trim().toLowerCase();
+    const value = index < 0 ? "" : directive.substring(index + 1).trim().replace(/^"(.*)"$/, "$1");
+    if (name !== "") directives.set(name, value);
+  }
+  return directives;
+};
+
+const parseSeconds = (value: string | undefined): number | null => {
+  if (value === undefined || !/^\d+$/.test(value)) return null;
+  return parseInt(value, 10) * 1000;
+};
+
+const parseDate = (value: string | null): number | null => {
+  if (value === null) return null;
+  const date = Date.parse(value);
+  return isNaN(date) ? null : date;
+};
+
+/**
+ * Determine how long a response is fresh for, in milliseconds.
+ */
+const getFreshness = (response: HttpResponse, directives: Map<string, string>, now: number): number => {
+  const maxAge = parseSeconds(directives.get("max-age"));
+  const date = parseDate(getHeader(response.headers, "Date")) ?? now;
+  const age = parseSeconds(getHeader(response.headers, "Age") ?? undefined) ?? 0;
+
+  if (maxAge !== null) return maxAge - age;
+
+  const expires = parseDate(getHeader(response.headers, "Expires"));
+  if (expires !== null) return expires - date - age;
+
+  // If there is no explicit expiry time, use 10% of the time since the response was last modified.
+  const lastModified = parseDate(getHeader(response.headers, "Last-Modified"));
+  if (lastModified !== null && cacheableStatuses.has(response.status)) {
+    return Math.min(maxHeuristicFreshness, Math.max(0, (date - lastModified) / 10)) - age;
+  }
+
+  return 0;
+};
+
+/**
+ * A size-limited cache of HTTP responses. Least recently used responses are evicted first.
+ *
+ * Only simple GET requests (those without a body or credentials) are cached. Concurrent identical requests are sent
+ * once, with every caller receiving the same response.
+ */
+export class HttpCache {
+  /** Cached responses, ordered from least to most recently used. */
+  private readonly entries = new Map<string, CacheEntry>();
+  private readonly pending = new Map<string, Promise<HttpResponse>>();
+  private readonly transport: HttpTransport;
+  private size: number = 0;
+
+  /** The maximum total size of all cached responses, in bytes. Set to 0 to disable the cache. */
+  private maxSize: number;
+  /** The maximum size of a single cached response, in bytes. */
+  private maxEntrySize: number;
+
+  public hits: number = 0;
+  public revalidated: number = 0;
+  public misses: number = 0;
+  public deduplicated: number = 0;
+
+  public constructor(transport: HttpTransport, maxSize: number, maxEntrySize: number) {
+    this.transport = transport;
+    this.maxSize = maxSize;
+    this.maxEntrySize = maxEntrySize;
+  }
+
+  /**
+   * Change the size limits of this cache, removing any responses which no longer fit.
+   *
+   * @param maxSize      The maximum total size of all cached responses, in bytes. Set to 0 to disable the cache.
+   * @param maxEntrySize The maximum size of a single cached response, in bytes.
+   */
+  public setLimits(maxSize: number, maxEntrySize: number): void {
+    this.maxSize = maxSize;
+    this.maxEntrySize = maxEntrySize;
+
+    for (const [key, entry] of this.entries) {
+      if (entry.size > maxEntrySize) this.remove(key);
+    }
+    this.evict();
+  }
+
+  /**
+   * Send a request, using a cached response if possible.
+   *
+   * @param request The request to send.
+   * @return The response to this request.
+   */
+  public fetch(request: HttpRequest): Promise<HttpResponse> {
+    const key = this.getKey(request);
+    if (key === null) return this.transport(request);
+
+    const pending = this.pending.get(key);
+    if (pending) {
+      this.deduplicated++;
+      return pending;
+    }
+
+    const response = this.fetchCached(key, request);
+    this.pending.set(key, response);
+    const remove = (): void => {
+      this.pending.delete(key);
+    };
+    response.then(remove, remove);
+    return response;
+  }
+
+  /**
+   * Get the key to cache this request under, or `null` if it should not be cached.
+   */
+  private getKey(request: HttpRequest): string | null {
+    if (this.maxSize <= 0 || request.method.toUpperCase() !== "GET" || request.body !== null) return null;
+
+    const requestControl = parseCacheControl(getHeader(request.headers, "Cache-Control"));
+    if (requestControl.has("no-store") || getHeader(request.headers, "Authorization") !== null) return null;
+
+    // Include the request's headers in the key, rather than inspecting Vary, as computers rarely send the same request
+    // with different headers.
+    const headers = request.headers
+      .filter(([name]) => name.toLowerCase() !== "cache-control")
+      .map(([name, value]) => `${name.toLowerCase()}: ${value}`)
+      .sort();
+    return `${request.url}\n${headers.join("\n")}`;
+  }
+
+  private async fetchCached(key: string, request: HttpRequest): Promise<HttpResponse> {
+    const now = Date.now();
+    const entry = this.entries.get(key);
+    const requestControl = parseCacheControl(getHeader(request.headers, "Cache-Control"));
+
+    if (entry) {
+      // Mark this entry as recently used.
+      this.entries.delete(key);
+      this.entries.set(key, entry);
+
+      if (!entry.noCache && !requestControl.has("no-cache") && now < entry.expires) {
+        this.hits++;
+        return entry.response;
+      }
+    }
+
+    // If we've a stale response, ask the server whether it has changed.
+    const headers: HttpHeaders = [...request.headers];
+    if (entry?.etag) headers.push(["If-None-Match", entry.etag]);
+    if (entry?.lastModified) headers.push(["If-Modified-Since", entry.lastModified]);
+
+    const response = await this.transport({ ...request, headers });
+    if (entry && response.status === 304) {
+      this.revalidated++;
+      const updated: HttpResponse = { ...entry.response, headers: mergeHeaders(entry.response.headers, response.headers) };
+      this.store(key, updated, now);
+      return updated;
+    }
+
+    this.misses++;
+    this.store(key, response, now);
+    return response;
+  }
+
+  private store(key: string, response: HttpResponse, now: number): void {
+    this.remove(key);
+
+    const directives = parseCacheControl(getHeader(response.headers, "Cache-Control"));
+    const etag = getHeader(response.headers, "ETag");
+    const lastModified = getHeader(response.headers, "Last-Modified");
+    const freshness = getFreshness(response, directives, now);
+
+    // Only keep responses which are either fresh, or which we can revalidate later.
+    if (directives.has("no-store") || getHeader(response.headers, "Vary") === "*") return;
+    if (response.status !== 200 && !(freshness > 0 && cacheableStatuses.has(response.status))) return;
+    if (freshness <= 0 && etag === null && lastModified === null) return;
+
+    let size = key.length * 2 + response.body.byteLength;
+    for (const [name, value] of response.headers) size += (name.length + value.length) * 2;
+    if (size > this.maxEntrySize || size > this.maxSize) return;
+
+    this.entries.set(key, {
+      response, size, etag, lastModified,
+      expires: now + freshness,
+      noCache: directives.has("no-cache") || (directives.has("must-revalidate") && freshness <= 0),
+    });
+    this.size += size;
+    this.evict();
+  }
+
+  private remove(key: string): void {
+    const entry = this.entries.get(key);
+    if (!entry) return;
+
+    this.entries.delete(key);
+    this.size -= entry.size;
+  }
+
+  /**
+   * Remove the least recently used entries until the cache is within its size limit.
+   */
+  private evict(): void {
+    for (const [key, entry] of this.entries) {
+      if (this.size <= this.maxSize) break;
+      this.entries.delete(key);
+      this.size -= entry.size;
+    }
+  }
+}
+
+/**
+ * Update a cached response's headers with those from a 304 (Not Modified) response.
+ */
+const mergeHeaders = (original: HttpHeaders, updated: HttpHeaders): HttpHeaders => {
+  const replaced = new Set(updated.map(([name]) => name.toLowerCase()));
+  return [...original.filter(([name]) => !replaced.has(name.toLowerCase())), ...updated];
+};
@@ -0,0 +1,216 @@
+import { HttpCache, type HttpHeaders, type HttpRequest, type HttpResponse } from "./cache";
+
+/**
+ * Send a request using {@link fetch}.
+ */
+const fetchTransport = async ({ method, url, headers, body }: HttpRequest): Promise<HttpResponse> => {
+  const response = await fetch(url, { method, headers, body, redirect: "follow" });
+
+  const responseHeaders: HttpHeaders = [];
+  response.headers.forEach((value, key) => responseHeaders.push([key, value]));
+  return {
+    // Opaque responses have no URL, so fall back to the one we requested.
+    url: response.url || url,
+    status: response.status,
+    statusText: response.statusText,
+    headers: responseHeaders,
+    body: await response.arrayBuffer(),
+  };
+};
+
+/**
+ * The cache used by every {@link CachingXMLHttpRequest}.
+ */
+export const httpCache = new HttpCache(fetchTransport, 8 * 1024 * 1024, 1024 * 1024);
+
+type Listener = (this: CachingXMLHttpRequest, event: Event) => void;
+
+const readyStates: Record<number, string> = {
+  0: "UNSENT", 1: "OPENED", 2: "HEADERS_RECEIVED", 3: "LOADING", 4: "DONE",
+};
+
+/**
+ * An implementation of the parts of {@link XMLHttpRequest} used by the emulator's HTTP API, which sends requests
+ * through {@link httpCache}.
+ *
+ * The HTTP API cannot be changed directly. Instead, `rollup.config.js` binds `XMLHttpRequest` to this class inside the
+ * emulator's Javascript runtime, leaving the global `XMLHttpRequest` untouched for the rest of the page. This also
+ * makes the HTTP API work outside a browser, where only `fetch` is available. The WebAssembly runtime still uses the
+ * browser's `XMLHttpRequest`, and so is not cached.
+ */
+export class CachingXMLHttpRequest {
+  public static readonly UNSENT = 0;
+  public static readonly OPENED = 1;
+  public static readonly HEADERS_RECEIVED = 2;
+  public static readonly LOADING = 3;
+  public static readonly DONE = 4;
+
+  public readyState: number = CachingXMLHttpRequest.UNSENT;
+  public status: number = 0;
+  public statusText: string = "";
+  public responseURL: string = "";
+  public responseType: XMLHttpRequestResponseType = "";
+  public timeout: number = 0;
+  public withCredentials: boolean = false;
+
+  public onreadystatechange: Listener | null = null;
+  public onload: Listener | null = null;
+  public onerror: Listener | null = null;
+  public onabort: Listener | null = null;
+  public ontimeout: Listener | null = null;
+  public onloadend: Listener | null = null;
+
+  private method: string = "GET";
+  private url: string = "";
+  private requestHeaders: HttpHeaders = [];
+  private responseHeaders: HttpHeaders = [];
+  private body: ArrayBuffer | null = null;
+  private mimeType: string | null = null;
+  /** Incremented whenever the request is aborted or reopened, so that we ignore the response to an old request. */
+  private generation: number = 0;
+  private readonly listeners = new Map<string, Array<Listener>>();
+
+  public open(method: string, url: string, async: boolean = true): void {
+    if (!async) throw new Error("Synchronous requests are not supported");
+
+    this.generation++;
+    this.method = method.toUpperCase();
+    this.url = url;
+    this.requestHeaders = [];
+    this.responseHeaders = [];
+    this.body = null;
+    this.status = 0;
+    this.statusText = "";
+    this.setReadyState(CachingXMLHttpRequest.OPENED);
+  }
+
+  public setRequestHeader(name: string, value: string): void {
+    if (this.readyState !== CachingXMLHttpRequest.OPENED) throw new Error(`Cannot set headers when ${readyStates[this.readyState]}`);
+    this.requestHeaders.push([name, value]);
+  }
+
+  public overrideMimeType(mimeType: string): void {
+    this.mimeType = mimeType;
+  }
+
+  public send(body?: string | ArrayBuffer | ArrayBufferView | null): void {
+    if (this.readyState !== CachingXMLHttpRequest.OPENED) throw new Error(`Cannot send when ${readyStates[this.readyState]}`);
+
+    const generation = this.generation;
+    const request: HttpRequest = {
+      method: this.method,
+      url: this.url,
+      headers: this.requestHeaders,
+      body: body === undefined || body === null || this.method === "GET" || this.method === "HEAD" ? null : toArrayBuffer(body),
+    };
+
+    let timedOut = false;
+    const timer = this.timeout > 0 ? setTimeout(() => {
+      if (generation !== this.generation) return;
+      timedOut = true;
+      this.fail("timeout");
+    }, this.timeout) : null;
+
+    httpCache.fetch(request).then(response => {
+      if (timer !== null) clearTimeout(timer);
+      if (generation !== this.generation || timedOut) return;
+
+      this.status = response.status;
+      this.statusText = response.statusText;
+      this.responseURL = response.url;
+      this.responseHeaders = response.headers;
+      this.body = response.body;
+      this.setReadyState(CachingXMLHttpRequest.HEADERS_RECEIVED);
+      this.setReadyState(CachingXMLHttpRequest.LOADING);
+      this.setReadyState(CachingXMLHttpRequest.DONE);
+      this.dispatch("load");
+      this.dispatch("loadend");
+    }, () => {
+      if (timer !== null) clearTimeout(timer);
+      if (generation !== this.generation || timedOut) return;
+      this.fail("error");
+    });
+  }
+
+  public abort(): void {
+    if (this.readyState === CachingXMLHttpRequest.UNSENT || this.readyState === CachingXMLHttpRequest.DONE) return;
+    this.generation++;
+    this.fail("abort");
+  }
+
+  public get response(): unknown {
+    if (this.readyState !== CachingXMLHttpRequest.DONE || this.body === null) {
+      return this.responseType === "" || this.responseType === "text" ? "" : null;
+    }
+
+    switch (this.responseType) {
+      case "arraybuffer": return this.body.slice(0);
+      case "blob": return new Blob([this.body], { type: this.getContentType() });
+      case "json": return JSON.parse(this.responseText) as unknown;
+      default: return this.responseText;
+    }
+  }
+
+  public get responseText(): string {
+    if (this.body === null) return "";
+    return new TextDecoder().decode(this.body);
+  }
+
+  public getResponseHeader(name: string): string | null {
+    const lowerName = name.toLowerCase();
+    const values = this.responseHeaders.filter(([key]) => key.toLowerCase() === lowerName).map(([, value]) => value);
+    return values.length === 0 ? null : values.join(", ");
+  }
+
+  public getAllResponseHeaders(): string {
+    return this.responseHeaders.map(([key, value]) => `${key.toLowerCase()}: ${value}\r\n`).join("");
+  }
+
+  public addEventListener(type: string, listener: Listener): void {
+    const listeners = this.listeners.get(type);
+    if (listeners) listeners.push(listener);
+    else this.listeners.set(type, [listener]);
+  }
+
+  public removeEventListener(type: string, listener: Listener): void {
+    const listeners = this.listeners.get(type);
+    if (!listeners) return;
+    const index = listeners.indexOf(listener);
+    if (index >= 0) listeners.splice(index, 1);
+  }
+
+  private getContentType(): string {
+    return this.mimeType ?? this.getResponseHeader("Content-Type") ?? "";
+  }
+
+  private fail(type: "error" | "abort" | "timeout"): void {
+    this.status = 0;
+    this.statusText = "";
+    this.responseHeaders = [];
+    this.body = null;
+    this.setReadyState(CachingXMLHttpRequest.DONE);
+    this.dispatch(type);
+    this.dispatch("loadend");
+  }
+
+  private setReadyState(state: number): void {
+    this.readyState = state;
+    this.dispatch("readystatechange");
+  }
+
+  private dispatch(type: string): void {
+    const event = { type, target: this, currentTarget: this } as unknown as Event;
+
+    const handler = (this as unknown as Record<string, Listener | null>)[`on${type}`];
+    if (handler) handler.call(this, event);
+
+    const listeners = this.listeners.get(type);
+    if (listeners) for (const listener of [...listeners]) listener.call(this, event);
+  }
+}
+
+const toArrayBuffer = (body: string | ArrayBuffer | ArrayBufferView): ArrayBuffer => {
+  if (typeof body === "string") return new TextEncoder().encode(body).buffer as ArrayBuffer;
+  if (body instanceof ArrayBuffer) return body;
+  return body.buffer.slice(body.byteOffset, body.byteOffset + body.byteLength) as ArrayBuffer;
+};
@@ -1,24 +1,50 @@
 import "setimmediate";
 
-import type { ComputerDisplay, ComputerHandle, ConfigGroup } from "cct/classes.js";
+import type { ComputerDisplay, ComputerHandle, ConfigGroup, TickControl } from "cct/classes.js";
 export type {
-  ComputerDisplay, ComputerHandle, ConfigGroup, FileAttributes, FileSystemEntry, PeripheralKind, Result, Side
+  ComputerDisplay, ComputerHandle, ComputerTime, ConfigGroup, EventStats, FileAttributes, FileSystemEntry, MemoryStats,
+  MetricSnapshot, PeripheralKind, QueuedEvent, RecordedInput, Result, Side, TickControl, TickStats
 } from "cct/classes.js";
 import { load as teaVMLoad } from "cct/wasm-gc-runtime.js";
 import { exceptions, gc } from "wasm-feature-detect";
+import { httpCache } from "./http/request";
 import debug from "./log";
+import romImage from "rom/image.bin";
+import { files as romFiles, version as romVersion } from "rom/index.js";
 import wasmClasses from "cct/classes.wasm";
 
 export type ConfigFactory = (name: string, description: string | null) => ConfigGroup;
 
+let resourceBase: string | null = null;
+
+/**
+ * Set the URL which our resources (such as the WASM runtime) are relative to. This is needed when running inside a
+ * worker, as the worker's URL is not the same as the page's.
+ *
+ * @param base The base URL.
+ */
+export const setResourceBase = (base: string): void => {
+  resourceBase = base;
+};
+
+let allowWasm = true;
+
+/**
+ * Always use the Javascript runtime, rather than the WebAssembly one. This is used when running outside a browser,
+ * where we cannot fetch the WebAssembly module.
+ */
+export const preferJavascriptRuntime = (): void => {
+  allowWasm = false;
+};
+
 const loadClasses = async (): Promise<{ main: (args: Array<string>) => void }> => {
   if (
-    typeof WebAssembly === "object" && typeof WebAssembly.compileStreaming === "function" &&
+    allowWasm && typeof WebAssembly === "object" && typeof WebAssembly.compileStreaming === "function" &&
         await exceptions() && await gc()
   ) {
     try {
       debug("Loading WASM runtime");
-      return (await teaVMLoad(wasmClasses)).exports;
+      return (await teaVMLoad(resourceBase === null ? wasmClasses : new URL(wasmClasses, resourceBase).href)).exports;
     } catch (e) {
       console.error("Failed to load WebAssembly runtime", e);
     }
@@ -28,6 +54,72 @@ const loadClasses = async (): Promise<{ main: (args: Array<string>) => void }> =
   return await import("cct/classes.js");
 };
 
+type Resources = {
+  version: string,
+  listResources: () => Array<string>,
+  getResource: (path: string) => Int8Array,
+};
+
+const empty = new Int8Array(0);
+
+/**
+ * Load the ROM. We prefer the packed ROM image, serving each file as a view into the image. However, this requires
+ * fetching the image, which is not possible outside a browser, so we fall back to the ROM embedded in the emulator.
+ *
+ * The embedded ROM is left out of the worker (see `rollup.config.js`), as the worker can always fetch the image, and
+ * bundling both would double the size of the worker.
+ */
+const loadResources = async (): Promise<Resources> => {
+  if (typeof location === "object") {
+    try {
+      const response = await fetch(resourceBase === null ? romImage : new URL(romImage, resourceBase).href);
+      if (!response.ok) throw new Error(`${response.status} ${response.statusText}`);
+      const image = new Int8Array(await response.arrayBuffer());
+
+      return {
+        version: romVersion,
+        listResources: () => Object.keys(romFiles),
+        getResource: path => {
+          const file = romFiles[path];
+          return file ? image.subarray(file[0], file[0] + file[1]) : empty;
+        },
+      };
+    } catch (e) {
+      console.error("Failed to load ROM image", e);
+    }
+  }
+
+  if (!__embeddedRom__) throw new Error("Cannot load the ROM image, and there is no embedded ROM to fall back to");
+
+  debug("Using embedded ROM");
+  const { version, resources } = await import("cct/resources.js");
+  const encoder = new TextEncoder();
+  return {
+    version,
+    listResources: () => Object.keys(resources),
+    getResource: path => new Int8Array(encoder.encode(resources[path])),
+  };
+};
+
+let compressor: ((contents: Int8Array) => Int8Array) | null = null;
+
+/**
+ * Compress a file's contents using the emulator's compressor.
+ *
+ * @param contents The contents to compress.
+ * @return The contents as a raw deflate stream, or `null` if the emulator has not been loaded yet.
+ */
+export const compress = (contents: Int8Array): Int8Array | null => compressor ? compressor(contents) : null;
+
+let tickControl: TickControl | null = null;
+
+/**
+ * Get the controller for the clock computers are ticked by.
+ *
+ * @return The tick controller, or `null` if the emulator has not been loaded yet.
+ */
+export const getTickControl = (): TickControl | null => tickControl;
+
 let loaded = false;
 let doAddComputer: ((computer: ComputerDisplay) => ComputerHandle) | null = null;
 
@@ -37,7 +129,7 @@ export const start = async (computer: ComputerDisplay, config: ConfigFactory): P
     return doAddComputer(computer);
   }
 
-  const [classes, { version, resources }] = await Promise.all([loadClasses(), import("cct/resources.js")]);
+  const [classes, { version, listResources, getResource }] = await Promise.all([loadClasses(), loadResources()]);
   if (loaded) {
     if (!doAddComputer) throw new Error("Failed to load computer (see previous errors for a possible reason");
     return doAddComputer(computer);
@@ -45,15 +137,19 @@ export const start = async (computer: ComputerDisplay, config: ConfigFactory): P
 
   loaded = true;
 
-  const encoder = new TextEncoder();
-  window.$javaCallbacks = {
+  // Use self rather than window, as this may be running inside a worker.
+  self.$javaCallbacks = {
     config,
     setup: add => doAddComputer = add,
+    setCompressor: compress => compressor = compress,
+    setTickControl: control => tickControl = control,
+    setHttpCacheLimits: (size, maxEntry) => httpCache.setLimits(size, maxEntry),
     modVersion: version,
-    listResources: () => Object.keys(resources),
-    getResource: path => new Int8Array(encoder.encode(resources[path]))
+    listResources,
+    getResource,
   };
   classes.main([]);
+
   if (!doAddComputer) throw new Error("Callbacks.setup was never called");
 
   return doAddComputer(computer);
@@ -1,4 +1,5 @@
-const debug = window.location.protocol === "file:" || window.location.hostname === "localhost";
+// location is not available when running outside a browser (see headless.ts).
+const debug = typeof location === "object" && (location.protocol === "file:" || location.hostname === "localhost");
 
 /* eslint-disable no-console */
 export default debug
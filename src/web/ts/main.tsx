@@ -3,12 +3,17 @@ import termFontHd from "@squid-dev/cc-web-term/assets/term_font_hd.png";
 import type * as monaco from "monaco-editor";
 import { Component, type JSX, type VNode, render } from "preact";
 import { Computer } from "./computer";
+import { type ComputerPersistance, VoidPersistence, loadPersistence } from "./computer/persist";
 import { Cog, Info } from "./font";
 import { About } from "./screens";
 import { ConfigGroup, SettingStore, Settings } from "./settings";
 import { actionButton, darkTheme, dialogueOverlay, infoButtons, lightTheme } from "./styles.css";
 import { classNames } from "./utils";
 
+type MainProps = {
+  persistence: ComputerPersistance,
+};
+
 type MainState = {
   settings: Settings,
   settingStorage: SettingStore,
@@ -18,8 +23,8 @@ type MainState = {
   dialogue?: (state: MainState) => JSX.Element,
 };
 
-class Main extends Component<unknown, MainState> {
-  public constructor(props: unknown, context: unknown) {
+class Main extends Component<MainProps, MainState> {
+  public constructor(props: MainProps, context: unknown) {
     super(props, context);
   }
 
@@ -28,13 +33,15 @@ class Main extends Component<unknown, MainState> {
 
     const configEditor = new ConfigGroup("Editor", "Configure the built-in editor", settingStorage);
     const configTerminal = new ConfigGroup("Terminal", "Configure the terminal display", settingStorage);
-    const configGroups = [configEditor, configTerminal];
+    const configEmulator = new ConfigGroup("Emulator", "Configure how computers are run", settingStorage);
+    const configGroups = [configEditor, configTerminal, configEmulator];
 
     const state: MainState = {
       settingStorage, configGroups,
       settings: {
         showInvisible: true, trimWhitespace: true, darkMode: false,
         terminalFont: termFont,
+        useWorker: false,
       },
       currentVDom: this.computerVDom,
     };
@@ -73,15 +80,21 @@ class Main extends Component<unknown, MainState> {
       ], "Which font the we should use within the terminal",
       x => this.setState(s => ({ settings: { ...s.settings, terminalFont: fonts[x] || termFontHd } })),
     );
+
+    configEmulator.addBoolean("emulator.worker", "Run in the background", state.settings.useWorker,
+      "Run computers in a background worker, so busy programs do not slow down the rest of the page. Speakers are " +
+      "not supported in this mode. Changes will apply when the page is next reloaded.",
+      x => this.setState(s => ({ settings: { ...s.settings, useWorker: x } })),
+    );
   }
 
-  public shouldComponentUpdate(_: unknown, newState: MainState): boolean {
+  public shouldComponentUpdate(_: MainProps, newState: MainState): boolean {
     return this.state.currentVDom !== newState.currentVDom ||
       this.state.dialogue !== newState.dialogue ||
       this.state.settings !== newState.settings;
   }
 
-  public render(_: unknown, state: MainState): VNode {
+  public render(_: MainProps, state: MainState): VNode {
     return <div class={classNames("container", state.settings.darkMode ? darkTheme : lightTheme)}>
       {state.currentVDom(state)}
       <div class={infoButtons}>
@@ -115,7 +128,8 @@ class Main extends Component<unknown, MainState> {
   };
 
   private computerVDom = ({ settings, dialogue }: MainState): VNode => {
-    return <Computer settings={settings} focused={dialogue === undefined} computerSettings={this.configFactory} />;
+    return <Computer persistence={this.props.persistence} settings={settings} focused={dialogue === undefined}
+      computerSettings={this.configFactory} />;
   };
 
   private configFactory = (name: string, description: string | null): ConfigGroup => {
@@ -147,7 +161,9 @@ class Main extends Component<unknown, MainState> {
     `)}`,
   } as monaco.Environment;
 
-  // Start the window!
+  // Load the computer's files, and then start the window!
   const page = document.getElementById("page")!;
-  render(<Main />, page, page.lastElementChild ?? undefined);
+  (__storageBackend__ === "none" ? Promise.resolve<ComputerPersistance>(new VoidPersistence()) : loadPersistence(0))
+    .then(persistence => render(<Main persistence={persistence} />, page, page.lastElementChild ?? undefined))
+    .catch(e => console.error("Cannot start emulator", e));
 }
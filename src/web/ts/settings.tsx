@@ -11,6 +11,9 @@ export type Settings = {
 
   // Terminal settings
   terminalFont: string,
+
+  // Emulator settings
+  useWorker: boolean,
 };
 
 /** The supported types of a property */
@@ -0,0 +1,171 @@
+/*
+ * The entrypoint for running a computer inside a Web Worker (see computer/remote.ts for the other side of this).
+ *
+ * This runs the emulator and a copy of the computer's file system, sending any terminal, state and file system changes
+ * back to the page.
+ */
+import { FileSystem, type FileSystemEntry } from "./computer/filesystem";
+import { type FileChange, MemoryPersistence, RecordingPersistence, type StoredEntry } from "./computer/persist";
+import type { ConfigDefinition, ConfigValue, FromWorker, HandleCall, ToWorker, WorkerUpdate } from "./computer/protocol";
+import { type ComputerDisplay, type ComputerHandle, type ConfigGroup, type Result, setResourceBase, start } from "./java";
+
+let pending: WorkerUpdate | null = null;
+let transfer: Array<Transferable> = [];
+
+const post = (message: FromWorker, transferables?: Array<Transferable>): void =>
+  self.postMessage(message, { transfer: transferables });
+
+const flush = (): void => {
+  if (!pending) return;
+
+  const update = pending;
+  pending = null;
+  post({ kind: "update", ...update }, transfer);
+  transfer = [];
+};
+
+/**
+ * Get the update to send to the page, scheduling it to be sent once the current task has finished. This means all
+ * changes made within one tick are sent as a single message.
+ */
+const update = (): WorkerUpdate => {
+  if (pending) return pending;
+
+  Promise.resolve().then(flush).catch(e => console.error(e));
+  return pending = { frames: [], state: null, changes: [], config: [], stats: null };
+};
+
+class WorkerDisplay implements ComputerDisplay {
+  private readonly recorder: RecordingPersistence;
+  private readonly filesystem: FileSystem;
+
+  public constructor(files: Array<StoredEntry>, label: string | null) {
+    this.recorder = new RecordingPersistence(new MemoryPersistence(files, label), true);
+    this.filesystem = new FileSystem(this.recorder);
+  }
+
+  public setState(label: string | null, on: boolean): void {
+    update().state = { label, on };
+  }
+
+  // The terminal is sent with updateTerminalFrame instead, so these are never called.
+  public updateTerminal(): void { }
+  public setTerminalLine(): void { }
+  public setPaletteColour(): void { }
+  public flushTerminal(): void { }
+
+  public updateTerminalFrame(frame: Int8Array, length: number): void {
+    // The frame's buffer is reused by the computer, so copy it, and then transfer the copy.
+    const copy = frame.slice(0, length);
+    update().frames.push(copy);
+    transfer.push(copy.buffer);
+  }
+
+  public getEntry(path: string): FileSystemEntry | null {
+    return this.filesystem.getEntry(path);
+  }
+
+  public createDirectory(path: string): Result<FileSystemEntry> {
+    return this.filesystem.createDirectory(path);
+  }
+
+  public createFile(path: string): Result<FileSystemEntry> {
+    return this.filesystem.createFile(path);
+  }
+
+  public deleteEntry(path: string): void {
+    this.filesystem.deleteEntry(path);
+  }
+
+  public moveEntry(source: string, dest: string): Result<true> {
+    return this.filesystem.moveEntry(source, dest);
+  }
+
+  public commitFileSystem(): void {
+    const changes = this.recorder.takeChanges();
+    if (changes.length > 0) update().changes.push(...changes);
+  }
+
+  /**
+   * Apply changes made on the page, such as by the editor.
+   */
+  public applyFileChanges(changes: Array<FileChange>): void {
+    // Don't record these changes, as otherwise they'd be sent straight back to the page.
+    this.recorder.recording = false;
+    try {
+      this.filesystem.applyChanges(changes);
+    } finally {
+      this.recorder.recording = true;
+    }
+  }
+}
+
+const configListeners = new Map<string, (value: ConfigValue) => void>();
+
+const declareConfig = (property: ConfigDefinition, changed: (value: never) => void): void => {
+  configListeners.set(property.id, changed as (value: ConfigValue) => void);
+  update().config.push(property);
+};
+
+const config = (group: string, groupDescription: string | null): ConfigGroup => ({
+  addString: (id, name, def, description, changed) =>
+    declareConfig({ group, groupDescription, id, name, description, type: "string", def }, changed),
+  addBoolean: (id, name, def, description, changed) =>
+    declareConfig({ group, groupDescription, id, name, description, type: "boolean", def }, changed),
+  addInt: (id, name, def, min, max, description, changed) =>
+    declareConfig({ group, groupDescription, id, name, description, type: "int", def, min, max }, changed),
+});
+
+let display: WorkerDisplay | null = null;
+let handle: ComputerHandle | null = null;
+
+const call = (computer: ComputerHandle, { method, args }: HandleCall): void => {
+  (computer[method] as (...args: Array<unknown>) => unknown).apply(computer, args);
+
+  if (method === "dispose") {
+    // Send any final changes to the page, and then stop the worker.
+    display?.commitFileSystem();
+    flush();
+    self.close();
+  }
+};
+
+self.addEventListener("message", (event: MessageEvent<ToWorker>) => {
+  const message = event.data;
+  switch (message.kind) {
+    case "init": {
+      setResourceBase(message.base);
+      display = new WorkerDisplay(message.files, message.label);
+      start(display, config)
+        .then(computer => {
+          handle = computer;
+          post({ kind: "ready" });
+
+          // Stats can't be fetched synchronously from the page, so send them periodically instead.
+          let lastProfile = "";
+          setInterval(() => {
+            // Profiles may be large, so only send them when they have changed.
+            const profile = computer.getProfile();
+            update().stats = {
+              tick: computer.getTickStats(), time: computer.getComputerTime(), events: computer.getEventStats(),
+              memory: computer.getMemoryStats(), metrics: computer.getMetricsSnapshot(false),
+              profile: profile === lastProfile ? null : profile,
+            };
+            lastProfile = profile;
+          }, 1000);
+        })
+        .catch(e => post({ kind: "failed", error: e instanceof Error ? e.message : String(e) }));
+      break;
+    }
+    case "batch": {
+      if (!display || !handle) break;
+
+      display.applyFileChanges(message.changes);
+      for (const x of message.calls) call(handle, x);
+      break;
+    }
+    case "config":
+      configListeners.get(message.id)?.(message.value);
+      break;
+  }
+});
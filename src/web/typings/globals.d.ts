@@ -4,6 +4,24 @@
  */
 declare const __storageBackend__: string;
 
+/** Whether the ROM embedded in the emulator is included in this bundle.
+ *
+ *  This is injected by `rollup.config.js`.
+ */
+declare const __embeddedRom__: boolean;
+
+/** The packed ROM image, generated by `tools/pack-rom.js`. */
+declare module "rom/image.bin" {
+  const url: string;
+  export default url;
+}
+
+/** The index into the packed ROM image, mapping each file to its offset and length. */
+declare module "rom/index.js" {
+  export const version: string;
+  export const files: Record<string, [number, number]>;
+}
+
 declare module "cct/classes.js" {
 
   /**
@@ -21,6 +39,104 @@ declare module "cct/classes.js" {
     size: number, /** The size of this file. */
   };
 
+  /**
+   * A snapshot of the tick scheduler's timings.
+   */
+  export type TickStats = {
+    ticks: number, /** The number of ticks which have elapsed, including those which were dropped. */
+    lateTicks: number, /** The number of ticks which ran at least one tick later than they were scheduled. */
+    droppedTicks: number, /** The number of ticks which were skipped entirely, as we had fallen too far behind. */
+    lastTickTime: number, /** How long the most recent tick took, in milliseconds. */
+  };
+
+  /**
+   * A snapshot of how much time has been spent ticking a single computer.
+   */
+  export type ComputerTime = {
+    totalTime: number, /** The total time spent ticking this computer, in milliseconds. */
+    lastTickTime: number, /** How long the most recent tick of this computer took, in milliseconds. */
+    averageTickTime: number, /** A moving average of how long each tick of this computer takes, in milliseconds. */
+    deferredTicks: number, /** The number of times this computer's tick was put off, as other computers had used up the tick's time budget. */
+  };
+
+  /**
+   * A snapshot of how much memory a computer's Lua code is using. These are estimates, and are only measured while the
+   * computer memory limit is enabled.
+   */
+  export type MemoryStats = {
+    usage: number, /** The memory currently in use, in bytes. */
+    peak: number, /** The most memory this computer has used, in bytes. */
+    limit: number, /** The most memory this computer may use, in bytes, or 0 if there is no limit. */
+  };
+
+  /**
+   * A single call to a computer, recorded by {@link ComputerHandle.startRecording}.
+   */
+  export type RecordedInput = {
+    tick: number, /** The tick this call was made on, relative to when the recording was started. */
+    method: string, /** The name of the {@link ComputerHandle} method which was called. */
+    args: Array<unknown>, /** The arguments passed to the method. */
+  };
+
+  /**
+   * Controls the clock which every computer is ticked by. This allows running computers deterministically (for
+   * instance, to replay a recording), by stepping through ticks manually rather than on a timer.
+   */
+  export interface TickControl {
+    /** Stop ticking computers on a timer. Computers are then only ticked by `step`. */
+    pause(): void;
+
+    /** Start ticking computers on a timer again. */
+    resume(): void;
+
+    /**
+     * Run a single tick. Unlike normal ticks, every computer is ticked, regardless of how long the tick takes, and the
+     * terminal is sent at the end of the tick. The clock must be paused first.
+     *
+     * @return How long the tick took, in milliseconds.
+     */
+    step(): number;
+
+    /** Get the number of ticks which have elapsed. */
+    getTicks(): number;
+
+    /**
+     * Set the current tick. This changes the time of day seen by computers. The clock must be paused first.
+     *
+     * @param ticks The new tick.
+     */
+    setTicks(ticks: number): void;
+  }
+
+  /**
+   * A single event sent with {@link ComputerHandle.events}.
+   */
+  export type QueuedEvent = {
+    name: string, /** The name of this event. */
+    args: Array<unknown> | null, /** The arguments to this event. */
+  };
+
+  /**
+   * A snapshot of how many events have been sent to a computer.
+   */
+  export type EventStats = {
+    queued: number, /** The number of events which were queued on the computer. */
+    coalesced: number, /** The number of events which replaced an equivalent event which was still waiting to be queued. */
+    dropped: number, /** The number of events which were dropped, as too many events were waiting to be queued. */
+  };
+
+  /**
+   * A snapshot of a single metric for a computer.
+   */
+  export type MetricSnapshot = {
+    name: string, /** The name of this metric. */
+    kind: "counter" | "event", /** The kind of this metric. */
+    count: number, /** The number of times this metric was observed. */
+    total: number, /** The sum of all values observed. This is always 0 for counters. */
+    max: number, /** The largest value observed. This is always 0 for counters. */
+    buckets: Array<number>, /** A histogram of observed values, where entry `i` is the number of values in `[2^(i-1), 2^i)`. */
+  };
+
   export interface FileSystemEntry {
     /**
      * If this entry is a directory.
@@ -43,6 +159,17 @@ declare module "cct/classes.js" {
      */
     getContents(): Int8Array;
 
+    /**
+     * Read part of the contents of this filesystem entry. This avoids copying the whole file when only part of it is
+     * needed.
+     *
+     * @param offset The offset to start reading from.
+     * @param length The maximum number of bytes to read.
+     * @return The requested contents. This may be shorter than `length` if the end of the file is reached.
+     * @throws If this is not a file
+     */
+    readContents(offset: number, length: number): Int8Array;
+
     /**
      * Set the contents of this filesystem entry
      *
@@ -52,6 +179,17 @@ declare module "cct/classes.js" {
      */
     setContents(contents: Int8Array): Result<true>;
 
+    /**
+     * Replace the contents of this filesystem entry from a given offset. Any existing contents before this offset are
+     * kept, while everything after it is discarded.
+     *
+     * @param offset   The offset to write at. This must be less than or equal to the current size of the file.
+     * @param contents The new contents from this offset onwards.
+     * @return Whether this file's contents was set or not
+     * @throws If this is not a file
+     */
+    writeContents(offset: number, contents: Int8Array): Result<true>;
+
     /**
      * Get the attributes for a file.
      */
@@ -89,8 +227,49 @@ declare module "cct/classes.js" {
      * @param path The path to delete
      */
     deleteEntry(path: string): void;
+
+    /**
+     * Move a file system entry (and any children) to a new path, creating any parent directories. This does not copy
+     * the contents of any files.
+     *
+     * @param source The path to move from.
+     * @param dest   The path to move to. This must not exist.
+     * @return Whether the entry could be moved.
+     */
+    moveEntry(source: string, dest: string): Result<true>;
+
+    /**
+     * Persist any changes made to the file system since the last commit. File system operations are buffered on the
+     * Javascript side, so this allows many changes made within one tick to be saved at once.
+     */
+    commitFileSystem(): void;
+
+    /**
+     * Update the terminal from a packed frame, and then flush it. This replaces the individual `updateTerminal`,
+     * `setTerminalLine`, `setPaletteColour` and `flushTerminal` calls.
+     *
+     * @param frame  The packed frame. This buffer is reused between calls, and so should not be retained.
+     * @param length The length of this frame. Any data after this point should be ignored.
+     */
+    updateTerminalFrame(frame: Int8Array, length: number): void;
   }
   export interface ComputerHandle {
+    /**
+     * Send several events to the computer at once. This is equivalent to calling `event` for each event, but only
+     * needs a single call into the emulator.
+     *
+     * Events are delivered at the start of the next tick. Consecutive events which are equivalent (such as dragging the
+     * mouse with the same button) are merged, and events are dropped once too many are waiting to be delivered.
+     *
+     * @param events The events to queue.
+     */
+    events(events: Array<QueuedEvent>): void;
+
+    /**
+     * Get how many events have been sent to this computer, and how many of those were merged or dropped.
+     */
+    getEventStats(): EventStats;
+
     /**
      * Set the computer's label.
      *
@@ -105,6 +284,93 @@ declare module "cct/classes.js" {
      * @param height The computer's height.
      */
     resize(width: number, height: number): void;
+
+    /**
+     * Resend the whole terminal on the next tick, rather than just the parts which have changed. This should be used
+     * if the display has lost its copy of the terminal.
+     */
+    redrawTerminal(): void;
+
+    /**
+     * Notify the computer that files have been changed outside of the computer (for instance, by the editor), and so
+     * any cached information about them should be discarded.
+     *
+     * @param path The path which was changed. Its children and parent are also invalidated.
+     */
+    filesChanged(path: string): void;
+
+    /**
+     * Set whether this computer is visible to the user. Hidden computers may be paused (see the "Hibernation" config
+     * group), and are resumed when they become visible again.
+     *
+     * @param visible Whether this computer is visible.
+     */
+    setVisible(visible: boolean): void;
+
+    /**
+     * Get a snapshot of how long ticks are taking, and how many have been run late or dropped. This is shared across
+     * all computers.
+     */
+    getTickStats(): TickStats;
+
+    /**
+     * Get how much time has been spent ticking this computer. Computers share a time budget within each tick, and so
+     * this can be used to find which computer is slowing down the others.
+     */
+    getComputerTime(): ComputerTime;
+
+    /**
+     * Start recording every input sent to this computer (such as events, resizing the terminal or attaching
+     * peripherals), along with the tick it was received on. Any previous recording is discarded.
+     */
+    startRecording(): void;
+
+    /**
+     * Stop recording this computer's input.
+     *
+     * @return The recorded input, or an empty array if we were not recording.
+     */
+    stopRecording(): Array<RecordedInput>;
+
+    /**
+     * Get how much memory this computer's Lua code is using.
+     */
+    getMemoryStats(): MemoryStats;
+
+    /**
+     * Start profiling the Lua code running on this computer, discarding any previous profile. This takes effect
+     * within a few million Lua instructions, including on a computer which is already running.
+     *
+     * Coroutines where the computer's own code has set a debug hook (with `debug.sethook`) are not profiled. A warning
+     * is logged if this is the case when the profiler is started.
+     *
+     * @param interval The number of Lua instructions between each sample. Lower values give a more detailed profile,
+     *                 but slow the computer down more. Values below 1000 are raised to 1000.
+     */
+    startProfiler(interval: number): void;
+
+    /**
+     * Stop profiling this computer.
+     *
+     * @return The recorded profile, as returned by `getProfile`.
+     */
+    stopProfiler(): string;
+
+    /**
+     * Get the profile recorded since the profiler was last started. This is in the "folded" format used by flame graph
+     * tools: each line contains a stack (with frames separated by `;`, outermost first), followed by how many times it
+     * was sampled.
+     */
+    getProfile(): string;
+
+    /**
+     * Get the metrics recorded for this computer. Metrics are only recorded while the "Collect metrics" option is
+     * enabled.
+     *
+     * @param reset Whether to clear the recorded metrics after taking this snapshot.
+     * @return A snapshot of every metric which has been observed.
+     */
+    getMetricsSnapshot(reset: boolean): Array<MetricSnapshot>;
   }
 
   export interface ConfigGroup {
@@ -153,5 +419,27 @@ declare module "cct/classes.js" {
      * @return The constructed config group
      */
     config(name: string, description: string | null): ConfigGroup;
+
+    /**
+     * Register the function used to compress files before they are saved.
+     *
+     * @param compress Compress a file's contents into a raw deflate stream.
+     */
+    setCompressor(compress: (contents: Int8Array) => Int8Array): void;
+
+    /**
+     * Register the controller for the clock computers are ticked by.
+     *
+     * @param control The tick controller.
+     */
+    setTickControl(control: TickControl): void;
+
+    /**
+     * Set the size limits of the cache used by the HTTP API.
+     *
+     * @param size     The maximum size of all cached responses, in bytes. 0 disables the cache.
+     * @param maxEntry The maximum size of a single cached response, in bytes.
+     */
+    setHttpCacheLimits(size: number, maxEntry: number): void;
   }
 }
@@ -0,0 +1,188 @@
+/**
+ * Run the benchmarks in src/bench, saving the results as JSON so they can be compared against later runs.
+ *
+ * Usage: npm run bench -- [--output results.json] [--compare previous.json] [--filter NAME]
+ *
+ * Requires the site to have been built first (./gradlew assemble).
+ */
+import fs from "fs";
+import http from "http";
+import os from "os";
+import path from "path";
+import { parseArgs } from "util";
+
+/* eslint-disable no-console */
+
+const { values } = parseArgs({
+  options: {
+    output: { type: "string", short: "o" },
+    compare: { type: "string" },
+    filter: { type: "string", short: "f" },
+  },
+});
+
+const benchDir = path.join(import.meta.dirname, "..", "src", "bench");
+
+/**
+ * Queue events on a computer once it is ready, and then tell it to stop.
+ *
+ * @param batched Whether to send each tick's events with a single call to `events`.
+ */
+const queueEvents = batched => ({ handle, exists }) => {
+  const perTick = 100;
+  let remaining = 50;
+
+  const args = [1, "bench", true, { nested: { list: [1, 2, 3], name: "value" } }];
+  const batch = Array.from({ length: perTick }, () => ({ name: "bench_event", args }));
+  const timer = setInterval(() => {
+    if (!exists(".headless/ready")) return;
+
+    if (remaining-- > 0) {
+      if (batched) {
+        handle.events(batch);
+      } else {
+        for (let i = 0; i < perTick; i++) handle.event("bench_event", args);
+      }
+    } else {
+      handle.event("bench_done", []);
+      clearInterval(timer);
+    }
+  }, 50);
+};
+
+/**
+ * Start a stand-in for a remote HTTP server, which counts the requests it receives for each path.
+ *
+ * Each response is delayed, to simulate a slow round trip through the CORS proxy.
+ */
+const startServer = async () => {
+  const requests = {};
+  const body = "x".repeat(16 * 1024);
+  const etag = "\"v1\"";
+
+  const server = http.createServer((request, response) => {
+    const { pathname } = new URL(request.url, "http://localhost");
+    requests[pathname] = (requests[pathname] ?? 0) + 1;
+
+    setTimeout(() => {
+      switch (pathname) {
+        case "/fresh":
+          response.writeHead(200, { "Cache-Control": "max-age=60" }).end(body);
+          break;
+        case "/etag":
+          if (request.headers["if-none-match"] === etag) {
+            response.writeHead(304, { "ETag": etag, "Cache-Control": "no-cache" }).end();
+          } else {
+            response.writeHead(200, { "ETag": etag, "Cache-Control": "no-cache" }).end(body);
+          }
+          break;
+        case "/concurrent":
+          response.writeHead(200, { "Cache-Control": "no-store" }).end(body);
+          break;
+        default:
+          response.writeHead(404).end();
+          break;
+      }
+    }, 20);
+  });
+
+  await new Promise(resolve => server.listen(0, "127.0.0.1", resolve));
+  return { url: `http://127.0.0.1:${server.address().port}`, requests, close: () => server.close() };
+};
+
+/**
+ * Send the server's address to a computer once it is ready.
+ */
+const sendServerUrl = url => ({ handle, exists }) => {
+  const timer = setInterval(() => {
+    if (!exists(".headless/ready")) return;
+    handle.event("bench_url", [url]);
+    clearInterval(timer);
+  }, 50);
+};
+
+const benchmarks = [
+  { name: "fs", file: "fs.lua", computers: 1 },
+  { name: "terminal-full", file: "terminal_full.lua", computers: 1 },
+  { name: "terminal-partial", file: "terminal_partial.lua", computers: 1 },
+  { name: "events", file: "events.lua", computers: 1, onStart: queueEvents(false) },
+  { name: "events-batched", file: "events.lua", computers: 1, onStart: queueEvents(true) },
+  { name: "idle-1", file: "idle.lua", computers: 1 },
+  { name: "idle-16", file: "idle.lua", computers: 16 },
+  { name: "busy-1", file: "busy.lua", computers: 1 },
+  { name: "busy-4", file: "busy.lua", computers: 4 },
+  { name: "http", file: "http.lua", computers: 1, server: true },
+];
+
+const { run } = await import("../build/headless/headless.js");
+
+// Start the runtime before measuring anything, so its startup time isn't counted against the first benchmark. Config
+// is only read when the runtime is started, so we also disable the CORS proxy here, allowing the http benchmark to
+// talk to our local server.
+await run({ script: "", computers: 1, timeout: 60_000, config: { "http.proxy": "" } });
+
+const results = [];
+let failed = false;
+for (const benchmark of benchmarks) {
+  if (values.filter && !benchmark.name.includes(values.filter)) continue;
+
+  const server = benchmark.server ? await startServer() : null;
+
+  const start = performance.now();
+  const cpu = process.cpuUsage();
+  const computers = await run({
+    script: fs.readFileSync(path.join(benchDir, benchmark.file), { encoding: "utf-8" }),
+    computers: benchmark.computers,
+    timeout: 60_000,
+    config: {},
+    onStart: server ? sendServerUrl(server.url) : benchmark.onStart,
+  });
+  const { user, system } = process.cpuUsage(cpu);
+  const time = performance.now() - start;
+  server?.close();
+
+  for (const computer of computers) {
+    if (computer.status === "ok") continue;
+    failed = true;
+    console.error(`${benchmark.name}: computer #${computer.id} failed (${computer.status}): ${computer.error ?? ""}`);
+  }
+
+  const result = {
+    name: benchmark.name,
+    computers: benchmark.computers,
+    time,
+    cpuTime: (user + system) / 1000,
+    results: computers.map(({ id, status, time, ticks, lateTicks, droppedTicks, tickTime, frames, frameBytes, output }) =>
+      ({ id, status, time, ticks, lateTicks, droppedTicks, tickTime, frames, frameBytes, output })),
+    // The number of requests which reached the server, keyed by path.
+    requests: server?.requests,
+  };
+  results.push(result);
+  console.log(`${benchmark.name}: ${result.time.toFixed(0)}ms (${result.cpuTime.toFixed(0)}ms CPU)`);
+  if (server) console.log(`  Requests received: ${JSON.stringify(server.requests)}`);
+}
+
+const output = values.output ?? path.join("build", "bench", `${new Date().toISOString().replace(/[:.]/g, "-")}.json`);
+fs.mkdirSync(path.dirname(output), { recursive: true });
+fs.writeFileSync(output, JSON.stringify({
+  date: new Date().toISOString(),
+  node: process.version,
+  cpu: os.cpus()[0]?.model ?? null,
+  benchmarks: results,
+}, null, 2));
+console.log(`Saved results to ${output}`);
+
+if (values.compare) {
+  const previous = new Map(JSON.parse(fs.readFileSync(values.compare, { encoding: "utf-8" })).benchmarks.map(x => [x.name, x]));
+  const change = (before, after) => `${before.toFixed(0)}ms -> ${after.toFixed(0)}ms (${after >= before ? "+" : ""}${((after - before) / before * 100).toFixed(1)}%)`;
+
+  console.log(`Compared with ${values.compare}:`);
+  for (const result of results) {
+    const before = previous.get(result.name);
+    if (!before) continue;
+    console.log(`  ${result.name}: ${change(before.cpuTime, result.cpuTime)} CPU, ${change(before.time, result.time)} total`);
+  }
+}
+
+// The tick scheduler runs forever, so we need to exit explicitly.
+process.exit(failed ? 1 : 0);
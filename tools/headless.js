@@ -0,0 +1,87 @@
+/**
+ * Run a Lua program on one or more computers, without a browser. This is intended for running regression and
+ * throughput tests on CI.
+ *
+ * Usage: npm run headless -- [--computers N] [--timeout SECONDS] [--config id=value]... [--profile FILE] program.lua
+ *
+ * When --profile is given, each computer's Lua code is profiled, and the samples from every computer are written to
+ * FILE in the folded format used by flame graph tools (such as https://github.com/brendangregg/FlameGraph). Use
+ * --profile-interval N to take a sample every N Lua instructions (1000 by default).
+ *
+ * Requires the site to have been built first (./gradlew assemble).
+ */
+import fs from "fs";
+import { parseArgs } from "util";
+
+/* eslint-disable no-console */
+
+const { values, positionals } = parseArgs({
+  options: {
+    computers: { type: "string", short: "n", default: "1" },
+    timeout: { type: "string", short: "t", default: "60" },
+    config: { type: "string", short: "c", multiple: true, default: [] },
+    profile: { type: "string", short: "p" },
+    "profile-interval": { type: "string", default: "1000" },
+  },
+  allowPositionals: true,
+});
+
+if (positionals.length !== 1) {
+  console.error("Usage: headless.js [--computers N] [--timeout SECONDS] [--config id=value]... [--profile FILE] program.lua");
+  process.exit(2);
+}
+
+const config = {};
+for (const option of values.config) {
+  const index = option.indexOf("=");
+  if (index < 0) {
+    console.error(`Invalid config option "${option}", expected id=value.`);
+    process.exit(2);
+  }
+  config[option.substring(0, index)] = option.substring(index + 1);
+}
+
+const { run } = await import("../build/headless/headless.js");
+
+const start = performance.now();
+const results = await run({
+  script: fs.readFileSync(positionals[0], { encoding: "utf-8" }),
+  computers: parseInt(values.computers, 10),
+  timeout: parseFloat(values.timeout) * 1000,
+  config,
+  profile: values.profile ? parseInt(values["profile-interval"], 10) : undefined,
+});
+const time = performance.now() - start;
+
+let failed = 0;
+let ticks = 0;
+for (const result of results) {
+  ticks = Math.max(ticks, result.ticks);
+  console.log(`Computer #${result.id}: ${result.status} in ${result.time.toFixed(0)}ms (${result.ticks} ticks)`);
+  if (result.status === "ok") continue;
+
+  failed++;
+  if (result.error) console.log(`  ${result.error}`);
+  for (const line of result.terminal) console.log(`  | ${line}`);
+}
+
+if (values.profile) {
+  // Merge the profiles from each computer, so that stacks shared between them are combined.
+  const stacks = new Map();
+  for (const result of results) {
+    for (const line of result.profile.split("\n")) {
+      const index = line.lastIndexOf(" ");
+      if (index < 0) continue;
+      const stack = line.substring(0, index);
+      stacks.set(stack, (stacks.get(stack) ?? 0) + parseInt(line.substring(index + 1), 10));
+    }
+  }
+
+  fs.writeFileSync(values.profile, Array.from(stacks, ([stack, count]) => `${stack} ${count}\n`).join(""));
+  console.log(`Saved profile to ${values.profile}`);
+}
+
+console.log(`Ran ${results.length} computer(s) in ${time.toFixed(0)}ms (${ticks} ticks), ${failed} failed.`);
+
+// The tick scheduler runs forever, so we need to exit explicitly.
+process.exit(failed === 0 ? 0 : 1);
@@ -0,0 +1,26 @@
+/**
+ * Packs the ROM into a single binary image, along with an index of where each file is within the image (see
+ * loadResources in src/web/ts/java.ts). This means the ROM can be loaded with one request and served as views into
+ * that image, rather than being embedded as strings and re-encoded every time a file is read.
+ *
+ * This is run by the packRom Gradle task, after the emulator has been compiled.
+ */
+import fs from "fs";
+
+const { version, resources } = await import("../build/teaVM/resources.js");
+
+const encoder = new TextEncoder();
+const files = {};
+const contents = [];
+let offset = 0;
+for (const name of Object.keys(resources).sort()) {
+  const encoded = encoder.encode(resources[name]);
+  files[name] = [offset, encoded.length];
+  contents.push(encoded);
+  offset += encoded.length;
+}
+
+fs.mkdirSync("build/rom", { recursive: true });
+fs.writeFileSync("build/rom/image.bin", Buffer.concat(contents));
+fs.writeFileSync("build/rom/index.js",
+  `export const version = ${JSON.stringify(version)};\nexport const files = ${JSON.stringify(files)};\n`);
@@ -0,0 +1,90 @@
+/**
+ * Replay a recording of a computer's input, reporting how long each tick took. Recordings can be made with the record
+ * button next to the computer's files (only available when computers are not run in the background).
+ *
+ * Usage: npm run replay -- [--ticks N] [--output results.json] [--compare previous.json] recording.json
+ *
+ * The replay is saved as JSON, and can be compared against an earlier replay of the same recording. This fails if the
+ * two replays did not finish with the same terminal contents.
+ *
+ * Requires the site to have been built first (./gradlew assemble).
+ */
+import fs from "fs";
+import path from "path";
+import { parseArgs } from "util";
+
+/* eslint-disable no-console */
+
+const { values, positionals } = parseArgs({
+  options: {
+    ticks: { type: "string", short: "t", default: "100" },
+    output: { type: "string", short: "o" },
+    compare: { type: "string" },
+  },
+  allowPositionals: true,
+});
+
+if (positionals.length !== 1) {
+  console.error("Usage: replay.js [--ticks N] [--output results.json] [--compare previous.json] recording.json");
+  process.exit(2);
+}
+
+const { loadRecording, replay } = await import("../build/headless/headless.js");
+
+const recording = loadRecording(fs.readFileSync(positionals[0], { encoding: "utf-8" }));
+const result = await replay({ recording, extraTicks: parseInt(values.ticks, 10), config: {} });
+
+/** Summarise a list of tick times. */
+const summarise = times => {
+  const sorted = [...times].sort((a, b) => a - b);
+  const percentile = p => sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * p))];
+  return {
+    total: times.reduce((a, b) => a + b, 0),
+    median: percentile(0.5),
+    p95: percentile(0.95),
+    max: sorted[sorted.length - 1],
+  };
+};
+
+const summary = summarise(result.tickTimes);
+console.log(
+  `Replayed ${recording.inputs.length} input(s) over ${result.tickTimes.length} ticks: ${summary.total.toFixed(0)}ms total, ` +
+  `${summary.median.toFixed(2)}ms median, ${summary.p95.toFixed(2)}ms p95, ${summary.max.toFixed(2)}ms max.`,
+);
+
+const output = values.output ?? path.join("build", "replay", `${new Date().toISOString().replace(/[:.]/g, "-")}.json`);
+fs.mkdirSync(path.dirname(output), { recursive: true });
+fs.writeFileSync(output, JSON.stringify({
+  date: new Date().toISOString(),
+  node: process.version,
+  recording: positionals[0],
+  summary,
+  ...result,
+}, null, 2));
+console.log(`Saved results to ${output}`);
+
+let failed = false;
+if (values.compare) {
+  const previous = JSON.parse(fs.readFileSync(values.compare, { encoding: "utf-8" }));
+  const change = (before, after) => `${before.toFixed(2)}ms -> ${after.toFixed(2)}ms (${after >= before ? "+" : ""}${((after - before) / before * 100).toFixed(1)}%)`;
+
+  console.log(`Compared with ${values.compare}:`);
+  for (const key of ["total", "median", "p95", "max"]) console.log(`  ${key}: ${change(previous.summary[key], summary[key])}`);
+
+  if (previous.tickTimes.length !== result.tickTimes.length) {
+    failed = true;
+    console.error(`  Replays ran for a different number of ticks (${previous.tickTimes.length} and ${result.tickTimes.length}).`);
+  }
+
+  const lines = Math.max(previous.terminal.length, result.terminal.length);
+  for (let i = 0; i < lines; i++) {
+    if (previous.terminal[i] === result.terminal[i]) continue;
+    failed = true;
+    console.error(`  Terminal differs on line ${i + 1}:`);
+    console.error(`    - ${previous.terminal[i] ?? ""}`);
+    console.error(`    + ${result.terminal[i] ?? ""}`);
+  }
+}
+
+// The tick scheduler runs forever, so we need to exit explicitly.
+process.exit(failed ? 1 : 0);
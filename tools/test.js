@@ -0,0 +1,69 @@
+/**
+ * Run the tests in src/test. Each test is a Lua program, which fails by throwing an error.
+ *
+ * Usage: npm test -- [--filter NAME]
+ *
+ * Requires the site to have been built first (./gradlew assemble).
+ */
+import fs from "fs";
+import path from "path";
+import { parseArgs } from "util";
+
+/* eslint-disable no-console */
+
+const { values } = parseArgs({
+  options: {
+    filter: { type: "string", short: "f" },
+  },
+});
+
+const testDir = path.join(import.meta.dirname, "..", "src", "test");
+
+/**
+ * Drop a file onto a computer once it is ready.
+ */
+const transferFile = (name, contents) => ({ handle, exists }) => {
+  const timer = setInterval(() => {
+    if (!exists(".headless/ready")) return;
+    handle.transferFiles([{ name, contents: new TextEncoder().encode(contents).buffer }]);
+    clearInterval(timer);
+  }, 50);
+};
+
+const tests = [
+  { name: "memory", file: "memory.lua" },
+  { name: "transfer", file: "transfer.lua", onStart: transferFile("transfer.txt", "0123456789abcdef".repeat(2048)) },
+];
+
+const { run } = await import("../build/headless/headless.js");
+
+// Config is only read when the runtime is started, so start it with the config every test expects.
+await run({ script: "", computers: 1, timeout: 60_000, config: { computer_memory_limit: (8 * 1024 * 1024).toString() } });
+
+let failed = 0;
+for (const test of tests) {
+  if (values.filter && !test.name.includes(values.filter)) continue;
+
+  const [result] = await run({
+    script: fs.readFileSync(path.join(testDir, test.file), { encoding: "utf-8" }),
+    computers: 1,
+    timeout: 30_000,
+    config: {},
+    onStart: test.onStart,
+  });
+
+  if (result.status === "ok") {
+    console.log(`${test.name}: ok`);
+    continue;
+  }
+
+  failed++;
+  console.log(`${test.name}: ${result.status}`);
+  if (result.error) console.log(`  ${result.error}`);
+  for (const line of result.terminal) console.log(`  | ${line}`);
+}
+
+console.log(`${failed} test(s) failed.`);
+
+// The tick scheduler runs forever, so we need to exit explicitly.
+process.exit(failed === 0 ? 0 : 1);